@@ -0,0 +1,124 @@
+package n2t;
+
+import java.util.Random;
+
+/**
+ * Generates large, deterministic assembly and VM programs for the benchmarks
+ */
+public class SyntheticPrograms {
+    private SyntheticPrograms() {}
+
+    private static final String[] DESTS = {"", "M", "D", "MD", "A", "AM", "AD", "AMD"};
+    private static final String[] COMPS = {
+        "0", "1", "-1", "D", "A", "M", "!D", "!A", "!M", "-D", "-A", "-M", "D+1", "A+1",
+        "M+1", "D-1", "A-1", "M-1", "D+A", "D+M", "D-A", "D-M", "A-D", "M-D", "D&A", "D&M", "D|A", "D|M"
+    };
+    private static final String[] JUMPS = {"", "JGT", "JEQ", "JGE", "JLT", "JNE", "JLE", "JMP"};
+    private static final String[] PREDEFINED = {"SP", "LCL", "ARG", "THIS", "THAT", "SCREEN", "KBD", "R13", "R15"};
+
+    private static final String[] ARITHMETIC = {"add", "sub", "neg", "eq", "gt", "lt", "and", "or", "not"};
+    private static final String[] PUSH_SEGMENTS = {"constant", "local", "argument", "this", "that", "temp", "static"};
+    private static final String[] POP_SEGMENTS = {"local", "argument", "this", "that", "temp", "static"};
+
+    /**
+     * Generates an assembly program mixing labels, forward and backward label references, variables,
+     * numeric addresses, predefined symbols, C-instructions, comments and blank lines
+     * @param lines the number of lines to generate
+     * @param seed the seed of the generator
+     * @return the program text
+     */
+    public static String assembly(int lines, long seed) {
+        Random random = new Random(seed);
+        StringBuilder program = new StringBuilder(lines * 12);
+        program.append("// synthetic program\n");
+
+        for (int i = 0; i < lines; i++) {
+            int kind = random.nextInt(100);
+            if (kind < 5) {
+                program.append("(L").append(i).append(")   // label\n");
+            } else if (kind < 25) {
+                program.append("@L").append(random.nextInt(lines)).append('\n');
+            } else if (kind < 35) {
+                program.append("  @var").append(random.nextInt(50)).append(" // variable\n");
+            } else if (kind < 45) {
+                program.append('@').append(random.nextInt(32768)).append('\n');
+            } else if (kind < 48) {
+                program.append('@').append(PREDEFINED[random.nextInt(PREDEFINED.length)]).append('\n');
+            } else if (kind < 50) {
+                program.append("   \n");
+            } else {
+                String dest = DESTS[random.nextInt(DESTS.length)];
+                String jump = JUMPS[random.nextInt(JUMPS.length)];
+                if (dest.isEmpty() && jump.isEmpty()) {
+                    jump = "JMP";
+                }
+                if (!dest.isEmpty()) {
+                    program.append(dest).append('=');
+                }
+                program.append(COMPS[random.nextInt(COMPS.length)]);
+                if (!jump.isEmpty()) {
+                    program.append(';').append(jump);
+                }
+                program.append(random.nextInt(10) < 3 ? "   // comment\n" : "\n");
+            }
+        }
+        return program.toString();
+    }
+
+    /**
+     * Generates a VM program of functions made of pushes, pops, arithmetic, branches and calls
+     * @param functions the number of functions to generate
+     * @param commandsPerFunction the number of commands in each function body
+     * @param seed the seed of the generator
+     * @return the program text
+     */
+    public static String vm(int functions, int commandsPerFunction, long seed) {
+        Random random = new Random(seed);
+        StringBuilder program = new StringBuilder(functions * commandsPerFunction * 16);
+
+        for (int f = 0; f < functions; f++) {
+            program.append("function Main.f").append(f).append(' ').append(random.nextInt(4)).append('\n');
+            int labels = 0;
+
+            for (int i = 0; i < commandsPerFunction; i++) {
+                int kind = random.nextInt(100);
+                if (kind < 35) {
+                    String segment = PUSH_SEGMENTS[random.nextInt(PUSH_SEGMENTS.length)];
+                    program.append("push ").append(segment).append(' ').append(index(segment, random)).append('\n');
+                } else if (kind < 50) {
+                    String segment = POP_SEGMENTS[random.nextInt(POP_SEGMENTS.length)];
+                    program.append("pop ").append(segment).append(' ').append(index(segment, random)).append('\n');
+                } else if (kind < 80) {
+                    program.append(ARITHMETIC[random.nextInt(ARITHMETIC.length)]).append("    // arithmetic\n");
+                } else if (kind < 85) {
+                    program.append("label Main.f").append(f).append("$L").append(labels++).append('\n');
+                } else if (kind < 90 && labels > 0) {
+                    program.append("if-goto Main.f").append(f).append("$L").append(random.nextInt(labels)).append('\n');
+                } else if (kind < 93 && labels > 0) {
+                    program.append("goto Main.f").append(f).append("$L").append(random.nextInt(labels)).append('\n');
+                } else if (kind < 97) {
+                    program.append("call Main.f").append(random.nextInt(functions)).append(' ')
+                            .append(random.nextInt(3)).append('\n');
+                } else {
+                    program.append('\n');
+                }
+            }
+            program.append("return\n");
+        }
+        return program.toString();
+    }
+
+    // Picks an index that is valid for the segment
+    private static int index(String segment, Random random) {
+        switch (segment) {
+            case "constant":
+                return random.nextInt(32768);
+            case "temp":
+                return random.nextInt(8);
+            case "static":
+                return random.nextInt(16);
+            default:
+                return random.nextInt(6);
+        }
+    }
+}
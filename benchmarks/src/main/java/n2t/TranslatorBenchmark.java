@@ -0,0 +1,90 @@
+package n2t;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import n2t.commands.CommandType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the hot paths of the VM translator on a synthetic program
+ *
+ * Each operation processes the whole program, so the reported throughput is programs per second.
+ * Run with {@code -prof gc} to report the allocation rate alongside it.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TranslatorBenchmark {
+    @Param({"500"})
+    int functions;
+
+    @Param({"200"})
+    int commandsPerFunction;
+
+    String[] sourceLines;
+    List<CommandType> commands;
+    Path output;
+
+    @Setup
+    public void setUp() throws IOException {
+        sourceLines = SyntheticPrograms.vm(functions, commandsPerFunction, 42).split("\n");
+
+        Parser parser = new Parser();
+        commands = new ArrayList<>();
+        for (String line : sourceLines) {
+            CommandType command = parser.parse(line);
+            if (command != null) {
+                commands.add(command);
+            }
+        }
+        output = Files.createTempFile("benchmark", ".asm");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(output);
+    }
+
+    /**
+     * Every line of the program parsed into a command by {@code Parser}
+     */
+    @Benchmark
+    public void parse(Blackhole blackhole) {
+        Parser parser = new Parser();
+        for (String line : sourceLines) {
+            blackhole.consume(parser.parse(line));
+        }
+    }
+
+    /**
+     * Every command of the program emitted as assembly by {@code CodeWriter}
+     */
+    @Benchmark
+    public void codeWriter() throws IOException {
+        CodeWriter codeWriter = new CodeWriter(output.toString());
+        codeWriter.setCurrentFileName("Main");
+        for (CommandType command : commands) {
+            codeWriter.write(command);
+        }
+        codeWriter.close();
+    }
+}
@@ -0,0 +1,169 @@
+package n2t.assembler;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import n2t.SyntheticPrograms;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the hot paths of the Hack assembler on a synthetic program
+ *
+ * Each operation processes the whole program, so the reported throughput is programs per second.
+ * Run with {@code -prof gc} to report the allocation rate alongside it.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AssemblerBenchmark {
+    @Param({"100000"})
+    int lines;
+
+    String[] sourceLines;
+    String[] symbols;
+    String[] dests;
+    String[] comps;
+    String[] jumps;
+
+    @Setup
+    public void setUp() {
+        String program = SyntheticPrograms.assembly(lines, 42);
+        sourceLines = program.split("\n");
+
+        // Collect the symbols and C-instruction fields exactly as they appear in the program
+        List<String> symbolList = new ArrayList<>();
+        List<String> destList = new ArrayList<>();
+        List<String> compList = new ArrayList<>();
+        List<String> jumpList = new ArrayList<>();
+        for (String line : sourceLines) {
+            String code = line.contains("//") ? line.substring(0, line.indexOf("//")).trim() : line.trim();
+            if (code.isEmpty() || code.startsWith("(")) {
+                continue;
+            }
+            if (code.startsWith("@")) {
+                if (!Character.isDigit(code.charAt(1))) {
+                    symbolList.add(code.substring(1));
+                }
+                continue;
+            }
+            int equals = code.indexOf('=');
+            int semicolon = code.indexOf(';');
+            destList.add(equals == -1 ? "" : code.substring(0, equals));
+            compList.add(code.substring(equals + 1, semicolon == -1 ? code.length() : semicolon));
+            jumpList.add(semicolon == -1 ? "" : code.substring(semicolon + 1));
+        }
+        symbols = symbolList.toArray(new String[0]);
+        dests = destList.toArray(new String[0]);
+        comps = compList.toArray(new String[0]);
+        jumps = jumpList.toArray(new String[0]);
+    }
+
+    /**
+     * Both passes of {@code Parser} over the program, one line at a time
+     */
+    @Benchmark
+    public void parseLine(Blackhole blackhole) {
+        Parser parser = new Parser();
+        for (String line : sourceLines) {
+            parser.checkLabelDeclaration(line);
+        }
+        for (String line : sourceLines) {
+            blackhole.consume(parser.parseLine(line));
+        }
+    }
+
+    /**
+     * Every symbolic A-instruction of the program looked up in a fresh {@code SymbolTable}
+     */
+    @Benchmark
+    public void checkSymbolTable(Blackhole blackhole) {
+        SymbolTable symbolTable = new SymbolTable();
+        for (String symbol : symbols) {
+            blackhole.consume(symbolTable.checkSymbolTable(symbol));
+        }
+    }
+
+    /**
+     * Every C-instruction of the program encoded from its dest, comp and jump fields by {@code Code}
+     */
+    @Benchmark
+    public void codeEncoding(Blackhole blackhole) {
+        Code code = new Code();
+        for (int i = 0; i < comps.length; i++) {
+            blackhole.consume(code.encodeComp(comps[i]) << 6 | code.encodeDest(dests[i]) << 3 | code.encodeJump(jumps[i]));
+        }
+    }
+
+    /**
+     * The whole program assembled from a file and written as a .hack file, as {@code Main} does, in each mode
+     */
+    @Benchmark
+    public void fullAssembly(FileState file, Blackhole blackhole) throws IOException {
+        int[] instructions = file.assembler.assemble(file.source);
+        try (HackWriter outputWriter = new HackWriter(file.output.toString())) {
+            outputWriter.writeAll(instructions);
+        }
+        blackhole.consume(instructions);
+    }
+
+    /**
+     * The whole program assembled from memory in each mode, without any file I/O
+     */
+    @Benchmark
+    public int[] inMemoryAssembly(FileState file) {
+        return file.assembler.assemble(file.bytes.duplicate());
+    }
+
+    /**
+     * The synthetic program written to a temporary file, and the assembler for each mode
+     */
+    @State(Scope.Benchmark)
+    public static class FileState {
+        @Param({"TWO_PASS", "SINGLE_PASS", "PARALLEL"})
+        Assembler.Mode mode;
+
+        @Param({"100000"})
+        int lines;
+
+        Assembler assembler;
+        Path source;
+        Path output;
+        ByteBuffer bytes;
+
+        @Setup
+        public void setUp() throws IOException {
+            String program = SyntheticPrograms.assembly(lines, 42);
+            bytes = ByteBuffer.wrap(program.getBytes(StandardCharsets.US_ASCII));
+            source = Files.createTempFile("benchmark", ".asm");
+            output = Files.createTempFile("benchmark", ".hack");
+            Files.writeString(source, program, StandardCharsets.US_ASCII);
+            assembler = new Assembler(mode);
+        }
+
+        @TearDown
+        public void tearDown() throws IOException {
+            Files.deleteIfExists(source);
+            Files.deleteIfExists(output);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package n2t.assembler;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Assembles Hack assembly code into 16-bit instruction words, for use as a library
+ *
+ * Each call to {@code assemble} uses its own {@code Parser} and {@code SymbolTable}, so a single
+ * {@code Assembler} may be shared between threads and used to assemble many programs in one process.
+ * Nothing is printed; errors are reported by throwing an {@code IllegalArgumentException} or
+ * {@code IllegalStateException} naming the offending line where it is known.
+ */
+public class Assembler {
+    /**
+     * How the assembly code is read
+     */
+    public enum Mode {
+        // Reads the code once for label declarations, then again to encode each instruction
+        TWO_PASS,
+        // Reads the code once, backpatching forward label references
+        SINGLE_PASS,
+        // Reads the code once for label declarations, then encodes the instructions in parallel
+        PARALLEL
+    }
+
+    private final Mode mode;
+    private final ForkJoinPool pool;
+
+    /**
+     * Creates an assembler using the two-pass mode
+     */
+    public Assembler() {
+        this(Mode.TWO_PASS);
+    }
+
+    /**
+     * Creates an assembler using the given mode, running the parallel mode on the common fork-join pool
+     * @param mode how the assembly code is read
+     */
+    public Assembler(Mode mode) {
+        this(mode, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates an assembler using the given mode and fork-join pool
+     * @param mode how the assembly code is read
+     * @param pool the pool used to encode instructions in the parallel mode
+     */
+    public Assembler(Mode mode, ForkJoinPool pool) {
+        this.mode = mode;
+        this.pool = pool;
+    }
+
+    /**
+     * Memory-maps and assembles an assembly file
+     * @param path the assembly file
+     * @return the encoded instruction words in program order, each in the low 16 bits of an {@code int}
+     * @throws IOException if the file cannot be read
+     */
+    public int[] assemble(Path path) throws IOException {
+        return assemble(Lexer.open(path));
+    }
+
+    /**
+     * Assembles assembly code held as bytes, from the buffer's start up to its limit
+     * @param source the assembly code
+     * @return the encoded instruction words in program order, each in the low 16 bits of an {@code int}
+     */
+    public int[] assemble(ByteBuffer source) {
+        return assemble(new Lexer(source));
+    }
+
+    /**
+     * Assembles assembly code held as text
+     * @param source the assembly code
+     * @return the encoded instruction words in program order, each in the low 16 bits of an {@code int}
+     */
+    public int[] assemble(CharSequence source) {
+        return assemble(ByteBuffer.wrap(source.toString().getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    // Assembles the code under the lexer using this assembler's mode
+    private int[] assemble(Lexer lexer) {
+        Parser parser = new Parser();
+
+        switch (mode) {
+            case SINGLE_PASS:
+                try {
+                    while (lexer.advance()) {
+                        parser.parseSinglePass(lexer);
+                    }
+                } catch (RuntimeException e) {
+                    throw atLine(lexer.lineNumber(), e);
+                }
+                return parser.finishSinglePass();
+            case PARALLEL:
+                return parser.parseParallel(lexer, pool);
+            default:
+                return assembleTwoPass(parser, lexer);
+        }
+    }
+
+    // Declares every label in a first pass, then rescans the code and encodes each instruction
+    private static int[] assembleTwoPass(Parser parser, Lexer lexer) {
+        try {
+            while (lexer.advance()) {
+                parser.checkLabelDeclaration(lexer);
+            }
+        } catch (RuntimeException e) {
+            throw atLine(lexer.lineNumber(), e);
+        }
+
+        lexer.reset();
+
+        int[] words = new int[parser.labelDeclarationLineNumber];
+        int count = 0;
+        try {
+            while (lexer.advance()) {
+                int instruction = parser.parseLine(lexer);
+                if (instruction != Parser.NO_INSTRUCTION) {
+                    words[count++] = instruction;
+                }
+            }
+        } catch (RuntimeException e) {
+            throw atLine(lexer.lineNumber(), e);
+        }
+        return count == words.length ? words : Arrays.copyOf(words, count);
+    }
+
+    // Wraps an error raised while parsing so that it names the line being parsed
+    static RuntimeException atLine(int lineNumber, RuntimeException e) {
+        String message = "Line " + lineNumber + ": " + e.getMessage();
+        if (e instanceof IllegalStateException) {
+            return new IllegalStateException(message, e);
+        }
+        return new IllegalArgumentException(message, e);
+    }
+}
@@ -0,0 +1,197 @@
+package n2t.assembler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Keeps previously assembled output on disk, keyed by a hash of the source and the assembler version,
+ * so unchanged sources can be copied from the cache instead of being assembled again
+ *
+ * The assembler version is a hash of the compiled classes that decide the output, so any change to the
+ * parser, encoder or writers gives every source a new key without anyone having to remember to bump it.
+ *
+ * Each entry is a single file named after its key. An entry's last-modified time is updated whenever it is
+ * used, and once the entries grow past the size limit the least recently used are deleted first.
+ * Safe to share between threads assembling different files.
+ */
+public class AssemblyCache {
+    // The classes whose code decides the output, each hashed along with its nested classes
+    private static final Class<?>[] OUTPUT_CLASSES = {
+        Assembler.class, Parser.class, Lexer.class, Code.class, SymbolTable.class,
+        HackWriter.class, HackBinWriter.class
+    };
+
+    // Part of every key, changing whenever the classes that produce the output change
+    public static final String ASSEMBLER_VERSION = assemblerVersion();
+
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+    private final Path directory;
+    private final long maxBytes;
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+
+    /**
+     * Opens a cache in the given directory, creating the directory if needed
+     * @param directory the directory holding the cache entries
+     * @param maxBytes the total size the entries are kept within
+     * @throws IOException if the directory cannot be created
+     */
+    public AssemblyCache(Path directory, long maxBytes) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Computes the key of a source for the given output extension
+     * @param source the assembly code, read from its position up to its limit without moving the position,
+     *               so the same bytes can be assembled after a miss
+     * @param extension the extension of the output, since each output format is cached separately
+     * @return the key, as a hex string
+     */
+    public String key(ByteBuffer source, String extension) {
+        MessageDigest digest = sha256();
+        digest.update((ASSEMBLER_VERSION + '\0' + extension + '\0').getBytes(StandardCharsets.US_ASCII));
+        digest.update(source.duplicate());
+        return HexFormat.of().formatHex(digest.digest()) + extension;
+    }
+
+    /**
+     * Copies the cached output for a key to the output path, if there is one, and counts the hit or miss
+     * @param key the key of the source
+     * @param outPath where to copy the cached output
+     * @return true if the output was restored from the cache, false if the source must be assembled
+     * @throws IOException if the cached output cannot be copied
+     */
+    public boolean restore(String key, Path outPath) throws IOException {
+        Path entry = directory.resolve(key);
+        try {
+            // Mark the entry as recently used before copying, so eviction does not pick it
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+            Files.copy(entry, outPath, StandardCopyOption.REPLACE_EXISTING);
+        } catch (NoSuchFileException e) {
+            misses.incrementAndGet();
+            return false;
+        }
+        hits.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Adds freshly assembled output to the cache under the given key, then evicts entries if the cache is too large
+     * @param key the key of the source
+     * @param outPath the assembled output
+     * @throws IOException if the output cannot be copied into the cache
+     */
+    public void store(String key, Path outPath) throws IOException {
+        // Copy to a temporary file first, so other threads never see a partial entry
+        Path temporary = Files.createTempFile(directory, key, ".tmp");
+        try {
+            Files.copy(outPath, temporary, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(temporary, directory.resolve(key), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+        evict();
+    }
+
+    /**
+     * Deletes the least recently used entries until the cache is within its size limit
+     * @throws IOException if the cache directory cannot be listed
+     */
+    private synchronized void evict() throws IOException {
+        List<Path> entries = new ArrayList<>();
+        long totalBytes = 0;
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path entry : (Iterable<Path>) files::iterator) {
+                if (!entry.toString().endsWith(".tmp")) {
+                    entries.add(entry);
+                    totalBytes += Files.size(entry);
+                }
+            }
+        }
+        if (totalBytes <= maxBytes) {
+            return;
+        }
+
+        entries.sort(Comparator.comparing(AssemblyCache::lastUsed));
+        for (Path entry : entries) {
+            if (totalBytes <= maxBytes) {
+                break;
+            }
+            long size = Files.size(entry);
+            if (Files.deleteIfExists(entry)) {
+                totalBytes -= size;
+            }
+        }
+    }
+
+    public int hits() {
+        return hits.get();
+    }
+
+    public int misses() {
+        return misses.get();
+    }
+
+    // Returns when an entry was last used, treating entries deleted in the meantime as the oldest
+    private static FileTime lastUsed(Path entry) {
+        try {
+            return Files.getLastModifiedTime(entry);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    // Hashes the class files of the output classes, as loaded, into a short hex version
+    private static String assemblerVersion() {
+        MessageDigest digest = sha256();
+        try {
+            for (Class<?> outputClass : OUTPUT_CLASSES) {
+                hashClass(digest, outputClass);
+                for (Class<?> nested : outputClass.getDeclaredClasses()) {
+                    hashClass(digest, nested);
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read the assembler's classes to version the cache", e);
+        }
+        return HexFormat.of().formatHex(digest.digest(), 0, 8);
+    }
+
+    private static void hashClass(MessageDigest digest, Class<?> hashedClass) throws IOException {
+        String resource = "/" + hashedClass.getName().replace('.', '/') + ".class";
+        try (InputStream in = AssemblyCache.class.getResourceAsStream(resource)) {
+            if (in == null) {
+                throw new IOException("Class file not found: " + resource);
+            }
+            digest.update(hashedClass.getName().getBytes(StandardCharsets.US_ASCII));
+            digest.update(in.readAllBytes());
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+}
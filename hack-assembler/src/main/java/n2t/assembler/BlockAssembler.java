@@ -0,0 +1,51 @@
+package n2t.assembler;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Assembles code that arrives in blocks, such as the output of a translator that is still running,
+ * without ever holding the whole program as text
+ *
+ * Each block must end with a complete line. The blocks are read once, as in the single-pass mode, so label
+ * declarations backpatch the references before them as each block is read, and the symbols never declared
+ * are allocated as variables by {@link #finish()}. Not safe to share between threads.
+ */
+public class BlockAssembler {
+    private final Parser parser = new Parser();
+    private int linesRead;              // The number of lines in the blocks already read, for error messages
+    private boolean finished;
+
+    /**
+     * Reads and encodes every line of a block, from the buffer's start up to its limit
+     * @param block one or more lines of assembly code, the last ending with a line terminator
+     * @throws IllegalArgumentException if a line is not valid assembly code, naming the line
+     * @throws IllegalStateException if the assembly has already been finished
+     */
+    public void assemble(ByteBuffer block) {
+        if (finished) {
+            throw new IllegalStateException("Blocks cannot be assembled after the assembly is finished.");
+        }
+        Lexer lexer = new Lexer(block);
+        try {
+            while (lexer.advance()) {
+                parser.parseSinglePass(lexer);
+            }
+        } catch (RuntimeException e) {
+            throw Assembler.atLine(linesRead + lexer.lineNumber(), e);
+        }
+        linesRead += lexer.lineNumber();
+    }
+
+    /**
+     * Completes the assembly once every block has been read
+     * @return the encoded instruction words in program order, each in the low 16 bits of an {@code int}
+     * @throws IllegalStateException if the assembly has already been finished
+     */
+    public int[] finish() {
+        if (finished) {
+            throw new IllegalStateException("The assembly is already finished.");
+        }
+        finished = true;
+        return parser.finishSinglePass();
+    }
+}
@@ -0,0 +1,168 @@
+package n2t.assembler;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Translates each field into corresponding binary value, returned as the field's bits
+ * in the low-order positions of an {@code int}
+ *
+ * Every legal mnemonic is at most three characters long, so its characters are packed into a single
+ * {@code int} key, one byte per character. Each field has a perfect hash table built from a fixed multiplier,
+ * chosen so that no two of the field's keys share a slot, so decoding is a single multiply, shift and compare.
+ */
+public class Code {
+    // Any key that cannot be packed, and the key of every empty slot
+    private static final int NO_KEY = -1;
+
+    // The longest legal mnemonic of any field
+    private static final int MAX_MNEMONIC_LENGTH = 3;
+
+    public int encodeDest(String destString) {
+        return lookup(DEST_TABLE, pack(destString), destString, "dest");
+    }
+
+    public int encodeComp(String compString) {
+        return lookup(COMP_TABLE, pack(compString), compString, "comp");
+    }
+
+    public int encodeJump(String jumpString) {
+        return lookup(JUMP_TABLE, pack(jumpString), jumpString, "jump");
+    }
+
+    /**
+     * Decodes the dest field held between two offsets of the source, without copying it
+     * @param source the bytes holding the instruction
+     * @param from the offset of the field's first byte
+     * @param to the offset just past the field's last byte
+     * @return the bits of the field
+     * @throws IllegalArgumentException if the field is not a legal mnemonic
+     */
+    public int decodeDest(ByteBuffer source, int from, int to) {
+        return lookup(DEST_TABLE, pack(source, from, to), source, from, to, "dest");
+    }
+
+    public int decodeComp(ByteBuffer source, int from, int to) {
+        return lookup(COMP_TABLE, pack(source, from, to), source, from, to, "comp");
+    }
+
+    public int decodeJump(ByteBuffer source, int from, int to) {
+        return lookup(JUMP_TABLE, pack(source, from, to), source, from, to, "jump");
+    }
+
+    // Looks up a key packed from a String, naming the mnemonic if it has no encoding
+    private static int lookup(PerfectHashTable table, int key, String mnemonic, String field) {
+        int bits = table.get(key);
+        if (bits == NO_KEY) {
+            throw unknownMnemonic(mnemonic, field);
+        }
+        return bits;
+    }
+
+    // Looks up a key packed from a slice of the source, only copying the mnemonic out if it has no encoding
+    private static int lookup(PerfectHashTable table, int key, ByteBuffer source, int from, int to, String field) {
+        int bits = table.get(key);
+        if (bits == NO_KEY) {
+            throw unknownMnemonic(Lexer.text(source, from, to), field);
+        }
+        return bits;
+    }
+
+    private static IllegalArgumentException unknownMnemonic(String mnemonic, String field) {
+        return new IllegalArgumentException("Unknown " + field + " mnemonic: '" + mnemonic + "'");
+    }
+
+    // Packs up to three printable ASCII characters into a key, or returns NO_KEY for anything else
+    private static int pack(String mnemonic) {
+        if (mnemonic.length() > MAX_MNEMONIC_LENGTH) {
+            return NO_KEY;
+        }
+        int key = 0;
+        for (int i = 0; i < mnemonic.length(); i++) {
+            char c = mnemonic.charAt(i);
+            if (c <= ' ' || c > '~') {
+                return NO_KEY;
+            }
+            key = key << 8 | c;
+        }
+        return key;
+    }
+
+    private static int pack(ByteBuffer source, int from, int to) {
+        if (to - from > MAX_MNEMONIC_LENGTH) {
+            return NO_KEY;
+        }
+        int key = 0;
+        for (int i = from; i < to; i++) {
+            byte b = source.get(i);
+            if (b <= ' ' || b > '~') {
+                return NO_KEY;
+            }
+            key = key << 8 | b;
+        }
+        return key;
+    }
+
+    /**
+     * A fixed table from packed mnemonic keys to field bits, with the slot of each key given by
+     * {@code (key * multiplier) >>> (32 - slotBits)}
+     */
+    private static final class PerfectHashTable {
+        private final int multiplier;
+        private final int shift;
+        private final int[] keys;
+        private final int[] bits;
+
+        PerfectHashTable(int multiplier, int slotBits, String[] mnemonics, int[] fieldBits) {
+            this.multiplier = multiplier;
+            this.shift = 32 - slotBits;
+            this.keys = new int[1 << slotBits];
+            this.bits = new int[1 << slotBits];
+            Arrays.fill(keys, NO_KEY);
+
+            for (int i = 0; i < mnemonics.length; i++) {
+                int key = pack(mnemonics[i]);
+                int slot = slot(key);
+                if (keys[slot] != NO_KEY) {
+                    // Only possible if the mnemonics are edited without choosing a new multiplier
+                    throw new IllegalStateException("Mnemonics '" + mnemonics[i] + "' and another share a slot.");
+                }
+                keys[slot] = key;
+                bits[slot] = fieldBits[i];
+            }
+        }
+
+        // Returns the bits for a key, or NO_KEY if the key is not in the table
+        int get(int key) {
+            int slot = slot(key);
+            return keys[slot] == key && key != NO_KEY ? bits[slot] : NO_KEY;
+        }
+
+        private int slot(int key) {
+            return (key * multiplier) >>> shift;
+        }
+    }
+
+    // Each dest component mapped to the binary representation
+    private static final PerfectHashTable DEST_TABLE = new PerfectHashTable(0xEC48C90D, 4,
+            new String[] {"",    "M",   "D",   "MD",  "DM",  "A",   "AM",  "AD",  "AMD", "ADM"},
+            new int[]    {0b000, 0b001, 0b010, 0b011, 0b011, 0b100, 0b101, 0b110, 0b111, 0b111});
+
+    // Each comp component mapped to the binary representation, with the 'a' bit first
+    private static final PerfectHashTable COMP_TABLE = new PerfectHashTable(0xF955D229, 6,
+            new String[] {
+                "0", "1", "-1", "D", "A", "M", "!D", "!A", "!M", "-D", "-A", "-M", "D+1", "A+1",
+                "M+1", "D-1", "A-1", "M-1", "D+A", "D+M", "D-A", "D-M", "A-D", "M-D", "D&A", "D&M", "D|A", "D|M"
+            },
+            new int[] {
+                0b0101010, 0b0111111, 0b0111010, 0b0001100, 0b0110000, 0b1110000, 0b0001101,
+                0b0110001, 0b1110001, 0b0001111, 0b0110011, 0b1110011, 0b0011111, 0b0110111,
+                0b1110111, 0b0001110, 0b0110010, 0b1110010, 0b0000010, 0b1000010, 0b0010011,
+                0b1010011, 0b0000111, 0b1000111, 0b0000000, 0b1000000, 0b0010101, 0b1010101
+            });
+
+    // Each jump component mapped to the binary representation
+    private static final PerfectHashTable JUMP_TABLE = new PerfectHashTable(0x58A98DFB, 3,
+            new String[] {"",    "JGT", "JEQ", "JGE", "JLT", "JNE", "JLE", "JMP"},
+            new int[]    {0b000, 0b001, 0b010, 0b011, 0b100, 0b101, 0b110, 0b111});
+}
@@ -0,0 +1,69 @@
+package n2t.assembler;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Writes encoded 16-bit instruction words to a packed .hackbin file
+ *
+ * The file is a 12-byte header followed by the instruction words, all big-endian:
+ * - bytes 0-3 hold the magic number, the ASCII characters "HBIN".
+ * - bytes 4-7 hold the number of instruction words.
+ * - bytes 8-11 hold the CRC-32 checksum of the instruction words.
+ * - each instruction word then takes 2 bytes, in program order.
+ *
+ * Files in this format are read back by the {@code RomLoader}.
+ */
+public class HackBinWriter {
+    public static final int MAGIC = 0x4842494E;     // "HBIN"
+    public static final int HEADER_BYTES = 12;
+    public static final String EXTENSION = ".hackbin";
+
+    private HackBinWriter() {}
+
+    /**
+     * Writes the instruction words to a .hackbin file, replacing any existing file
+     * @param outPath the file to write
+     * @param instructions the instruction words, each held in the low 16 bits
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(Path outPath, int[] instructions) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + instructions.length * 2).order(ByteOrder.BIG_ENDIAN);
+
+        // Leave the header empty until the checksum of the words is known
+        buffer.position(HEADER_BYTES);
+        for (int instruction : instructions) {
+            buffer.putShort((short) instruction);
+        }
+
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, instructions.length);
+        buffer.putInt(8, checksum(buffer, HEADER_BYTES, buffer.capacity()));
+        buffer.flip();
+
+        try (FileChannel channel = FileChannel.open(outPath, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    /**
+     * Computes the CRC-32 checksum of the bytes between two offsets, leaving the buffer's position unchanged
+     * @param buffer the bytes to check
+     * @param from the offset of the first byte
+     * @param to the offset just past the last byte
+     * @return the checksum, as the low 32 bits of the CRC
+     */
+    static int checksum(ByteBuffer buffer, int from, int to) {
+        CRC32 crc = new CRC32();
+        crc.update(buffer.slice(from, to - from));
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,55 @@
+package n2t.assembler;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes encoded 16-bit instruction words to a .hack file, one line of binary text per word
+ */
+public class HackWriter implements AutoCloseable {
+    private static final int WORD_BITS = 16;
+
+    private final OutputStream out;
+    // Reused for every word: 16 binary digits followed by a newline
+    private final byte[] line = new byte[WORD_BITS + 1];
+
+    public HackWriter(String outPath) throws IOException {
+        this(new FileOutputStream(outPath));
+    }
+
+    public HackWriter(OutputStream out) {
+        this.out = new BufferedOutputStream(out, 1 << 16);
+        this.line[WORD_BITS] = '\n';
+    }
+
+    /**
+     * Writes a single instruction word as its 16 binary digits, most significant bit first
+     * @param instruction the instruction word, held in the low 16 bits
+     * @throws IOException if the line cannot be written
+     */
+    public void write(int instruction) throws IOException {
+        for (int i = WORD_BITS - 1; i >= 0; i--) {
+            line[i] = (byte) ('0' + (instruction & 1));
+            instruction >>>= 1;
+        }
+        out.write(line);
+    }
+
+    /**
+     * Writes each of the given instruction words in order
+     * @param instructions the instruction words
+     * @throws IOException if a line cannot be written
+     */
+    public void writeAll(int[] instructions) throws IOException {
+        for (int instruction : instructions) {
+            write(instruction);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
@@ -0,0 +1,269 @@
+package n2t.assembler;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Scans the bytes of an assembly file directly, one coding line at a time
+ *
+ * Comments and whitespace are skipped in place. Each call to {@link #advance()} stops on the next line
+ * holding an A-instruction, C-instruction or label declaration, and records the byte offsets of its coding
+ * segment and of the C-instruction '=' and ';' delimiters, so no text is copied unless a caller asks for it.
+ */
+public class Lexer {
+    /**
+     * The kind of coding line the lexer is currently positioned on
+     */
+    public enum Kind {
+        A_INSTRUCTION,
+        C_INSTRUCTION,
+        LABEL_DECLARATION
+    }
+
+    private final ByteBuffer input;     // The assembly source, read with absolute gets only
+    private int position;               // Offset of the next byte to scan
+    private int lineNumber;             // 1-based number of the current line, for error messages
+
+    private Kind kind;                  // The kind of the current coding line
+    private int start;                  // Offset of the first byte of the current token, after any '@' or '('
+    private int end;                    // Offset just past the last byte of the current token, before any ')'
+    private int equalsIndex;            // Offset of the first '=' in a C-instruction, or -1 if there is no dest part
+    private int semicolonIndex;         // Offset of the first ';' in a C-instruction, or -1 if there is no jump part
+
+    public Lexer(ByteBuffer input) {
+        this.input = input;
+        rewind();
+    }
+
+    /**
+     * Memory-maps the given assembly file and creates a lexer over its contents
+     * @param path the assembly file
+     * @return a lexer positioned before the first line of the file
+     * @throws IOException if the file cannot be opened or mapped
+     */
+    public static Lexer open(Path path) throws IOException {
+        return new Lexer(map(path));
+    }
+
+    /**
+     * Memory-maps the given file, so its bytes can be shared by the lexer and anything else reading them
+     * @param path the file
+     * @return the contents of the file, from position 0 up to the limit
+     * @throws IOException if the file cannot be opened or mapped
+     */
+    public static ByteBuffer map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // The mapping stays valid after the channel is closed
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /**
+     * Creates a lexer over a single line of assembly text
+     * @param line the line of assembly code
+     * @return a lexer positioned before the line
+     */
+    public static Lexer ofLine(String line) {
+        return new Lexer(ByteBuffer.wrap(line.getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    /**
+     * Moves the lexer back to the start of the input, so that the file can be scanned again without re-reading it
+     */
+    public void reset() {
+        rewind();
+    }
+
+    // Moves back to the start of the input, kept private so the constructor calls nothing overridable
+    private void rewind() {
+        position = 0;
+        lineNumber = 0;
+        kind = null;
+    }
+
+    /**
+     * Advances to the next line that holds an instruction or label declaration, skipping empty and comment-only lines
+     * @return true if such a line was found, false once the end of the input has been reached
+     */
+    public boolean advance() {
+        int limit = input.limit();
+
+        while (position < limit) {
+            lineNumber++;
+            int segmentStart = -1;
+            int segmentEnd = -1;
+            equalsIndex = -1;
+            semicolonIndex = -1;
+
+            // Scan to the end of the line, or to the start of a comment, recording the
+            // first and last non-whitespace bytes and the position of each delimiter
+            while (position < limit) {
+                byte b = input.get(position);
+                if (b == '\n' || b == '\r') {
+                    break;
+                } else if (b == '/' && position + 1 < limit && input.get(position + 1) == '/') {
+                    skipToLineEnd(limit);
+                    break;
+                } else if (b > ' ') {
+                    if (segmentStart == -1) {
+                        segmentStart = position;
+                    }
+                    segmentEnd = position + 1;
+
+                    if (b == '=' && equalsIndex == -1) {
+                        equalsIndex = position;
+                    } else if (b == ';' && semicolonIndex == -1) {
+                        semicolonIndex = position;
+                    }
+                }
+                position++;
+            }
+            skipLineTerminator(limit);
+
+            // Only stop on lines with a coding segment
+            if (segmentStart != -1) {
+                classify(segmentStart, segmentEnd);
+                return true;
+            }
+        }
+        kind = null;
+        return false;
+    }
+
+    // Sets the kind and token bounds of the current coding segment from its first byte
+    private void classify(int segmentStart, int segmentEnd) {
+        byte first = input.get(segmentStart);
+        if (first == '@') {
+            kind = Kind.A_INSTRUCTION;
+            start = segmentStart + 1;
+            end = segmentEnd;
+        } else if (first == '(') {
+            kind = Kind.LABEL_DECLARATION;
+            start = segmentStart + 1;
+            end = Math.max(start, segmentEnd - 1);
+        } else {
+            kind = Kind.C_INSTRUCTION;
+            start = segmentStart;
+            end = segmentEnd;
+        }
+    }
+
+    // Moves past the rest of a commented line, up to but not including the line terminator
+    private void skipToLineEnd(int limit) {
+        while (position < limit) {
+            byte b = input.get(position);
+            if (b == '\n' || b == '\r') {
+                return;
+            }
+            position++;
+        }
+    }
+
+    // Moves past a single "\n", "\r" or "\r\n" line terminator
+    private void skipLineTerminator(int limit) {
+        if (position < limit && input.get(position) == '\r') {
+            position++;
+        }
+        if (position < limit && input.get(position) == '\n') {
+            position++;
+        }
+    }
+
+    public ByteBuffer input() {
+        return input;
+    }
+
+    public Kind kind() {
+        return kind;
+    }
+
+    public int start() {
+        return start;
+    }
+
+    public int end() {
+        return end;
+    }
+
+    public int equalsIndex() {
+        return equalsIndex;
+    }
+
+    public int semicolonIndex() {
+        return semicolonIndex;
+    }
+
+    public int lineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * Checks whether the current token consists only of decimal digits
+     * @return true if the token is a non-empty run of digits
+     */
+    public boolean isNumeric() {
+        return isNumeric(input, start, end);
+    }
+
+    /**
+     * Checks whether the bytes between two offsets consist only of decimal digits
+     * @param source the bytes holding the token
+     * @param from the offset of the first byte
+     * @param to the offset just past the last byte
+     * @return true if the token is a non-empty run of digits
+     */
+    public static boolean isNumeric(ByteBuffer source, int from, int to) {
+        if (from == to) {
+            return false;
+        }
+        for (int i = from; i < to; i++) {
+            byte b = source.get(i);
+            if (b < '0' || b > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parses the current numeric token, keeping only the low 15 bits in case
+     * an invalid overly large decimal was provided
+     * @return the low 15 bits of the number
+     */
+    public int parseAddress() {
+        return parseAddress(input, start, end);
+    }
+
+    /**
+     * Parses the decimal digits between two offsets, keeping only the low 15 bits
+     * @param source the bytes holding the number
+     * @param from the offset of the first digit
+     * @param to the offset just past the last digit
+     * @return the low 15 bits of the number
+     */
+    public static int parseAddress(ByteBuffer source, int from, int to) {
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            value = value * 10 + (source.get(i) - '0');
+        }
+        // 2^15 divides 2^32, so int overflow does not disturb the low 15 bits
+        return value & 0x7FFF;
+    }
+
+    /**
+     * Copies the bytes between two offsets of the given source into a {@code String}
+     * @param source the bytes holding the text
+     * @param from the offset of the first byte
+     * @param to the offset just past the last byte
+     * @return the text between the two offsets
+     */
+    public static String text(ByteBuffer source, int from, int to) {
+        byte[] bytes = new byte[to - from];
+        source.get(from, bytes);
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,214 @@
+package n2t.assembler;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/**
+ * Initializes the I/O files and manages file reading/writing
+ *
+ * Assembles either a single file, or with {@code --batch} every .asm file in a directory tree,
+ * writing each result next to its source with the .hack extension, or with {@code --binary}
+ * as a packed .hackbin ROM image. With {@code --cache}, sources that have not changed since they
+ * were last assembled are copied from the {@code AssemblyCache} instead.
+ */
+public class Main {
+
+   // Program entry point
+   public static void main(String[] args) {
+        Main assembler = new Main();
+        assembler.run(args);
+    }
+
+    // Runs the assembler
+    private void run(String[] args) {
+        // Separate the mode flags from the file path
+        Assembler.Mode mode = Assembler.Mode.TWO_PASS;
+        boolean batch = false;
+        boolean binary = false;
+        String cacheDirectory = null;
+        long cacheLimit = AssemblyCache.DEFAULT_MAX_BYTES;
+        String path = null;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("--cache") || arg.equals("--cache-limit")) {
+                // Both flags take a value, which must not be mistaken for the path
+                if (i + 1 == args.length) {
+                    System.out.println("Missing value for " + arg);
+                    printUsage();
+                    return;
+                }
+                String value = args[++i];
+                if (arg.equals("--cache")) {
+                    cacheDirectory = value;
+                } else {
+                    try {
+                        cacheLimit = Long.parseLong(value) * 1024 * 1024;
+                    } catch (NumberFormatException e) {
+                        System.out.println("Cache limit is not a number of megabytes: " + value);
+                        printUsage();
+                        return;
+                    }
+                }
+            } else if (arg.equals("--single-pass")) {
+                mode = Assembler.Mode.SINGLE_PASS;
+            } else if (arg.equals("--parallel")) {
+                mode = Assembler.Mode.PARALLEL;
+            } else if (arg.equals("--batch")) {
+                batch = true;
+            } else if (arg.equals("--binary")) {
+                binary = true;
+            } else if (arg.startsWith("--")) {
+                System.out.println("Unknown option: " + arg);
+                printUsage();
+                return;
+            } else {
+                path = arg;
+            }
+        }
+
+        // Check if the assembly file has been provided
+        if (path == null) {
+            printUsage();
+            return;
+        }
+
+        AssemblyCache cache = null;
+        if (cacheDirectory != null) {
+            try {
+                cache = new AssemblyCache(Paths.get(cacheDirectory), cacheLimit);
+            } catch (IOException e) {
+                System.out.println("Error occured opening the cache, assembling without it: " + e);
+            }
+        }
+
+        Assembler assembler = new Assembler(mode);
+        if (batch) {
+            runBatch(assembler, cache, Paths.get(path), binary);
+        } else {
+            try {
+                assembleFile(assembler, cache, Paths.get(path), binary);
+                System.out.println("Assembler finished.");
+            } catch (IOException e) {
+                System.out.println("Error occured reading or writing the file.");
+                e.printStackTrace();
+            } catch (RuntimeException e) {
+                System.out.println("Error during translation: " + e);
+            }
+        }
+
+        if (cache != null) {
+            System.out.println("Cache: " + cache.hits() + " hits, " + cache.misses() + " misses.");
+        }
+    }
+
+    // Prints the accepted flags and arguments
+    private static void printUsage() {
+        System.out.println("Usage: java n2t.assembler.Main [--single-pass | --parallel] [--batch] [--binary]"
+                + " [--cache 'directory' [--cache-limit megabytes]] 'file.path or directory'");
+    }
+
+    /**
+     * Assembles every .asm file in a directory tree, each on its own virtual thread
+     * @param assembler the assembler shared by every file
+     * @param cache the cache shared by every file, or null to assemble every file
+     * @param directory the root of the directory tree
+     * @param binary whether to write packed .hackbin files instead of .hack files
+     */
+    private void runBatch(Assembler assembler, AssemblyCache cache, Path directory, boolean binary) {
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(directory)) {
+            files = walk.filter(file -> file.toString().endsWith(".asm") && Files.isRegularFile(file))
+                    .sorted()
+                    .toList();
+        } catch (IOException e) {
+            System.out.println("Error occured listing the directory " + directory + ": " + e);
+            return;
+        }
+
+        int failures = 0;
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<?>> results = new ArrayList<>();
+            for (Path file : files) {
+                results.add(executor.submit(() -> {
+                    assembleFile(assembler, cache, file, binary);
+                    return null;
+                }));
+            }
+
+            // Report failures in the same order as the files were listed
+            for (int i = 0; i < files.size(); i++) {
+                try {
+                    results.get(i).get();
+                } catch (ExecutionException e) {
+                    System.out.println("Error assembling " + files.get(i) + ": " + e.getCause());
+                    failures++;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+        System.out.println("Assembler finished " + (files.size() - failures) + " of " + files.size() + " files.");
+    }
+
+    /**
+     * Assembles a single file and writes the result next to it with the .hack or .hackbin extension
+     * @param assembler the assembler to use
+     * @param cache the cache to restore the output from or store it in, or null to always assemble
+     * @param path the assembly file
+     * @param binary whether to write a packed .hackbin file instead of a .hack file
+     * @throws IOException if the file cannot be read or the output cannot be written
+     */
+    private static void assembleFile(Assembler assembler, AssemblyCache cache, Path path, boolean binary)
+            throws IOException {
+        String extension = binary ? HackBinWriter.EXTENSION : ".hack";
+        Path outPath = outputPath(path, extension);
+
+        // Map the source once, for both the cache key and the assembler
+        ByteBuffer source = Lexer.map(path);
+
+        // Skip parsing and encoding entirely if this exact source has been assembled before
+        String key = null;
+        if (cache != null) {
+            key = cache.key(source, extension);
+            if (cache.restore(key, outPath)) {
+                return;
+            }
+        }
+
+        int[] instructions = assembler.assemble(source);
+        if (binary) {
+            HackBinWriter.write(outPath, instructions);
+        } else {
+            try (HackWriter outputWriter = new HackWriter(outPath.toString())) {
+                outputWriter.writeAll(instructions);
+            }
+        }
+
+        if (cache != null) {
+            cache.store(key, outPath);
+        }
+    }
+
+    /**
+     * Returns the path of an output file next to the given source, with its extension replaced
+     * @param path the source file
+     * @param extension the new extension, including the leading dot
+     * @return the output file path
+     */
+    static Path outputPath(Path path, String extension) {
+        String name = path.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return path.resolveSibling((dot > 0 ? name.substring(0, dot) : name) + extension);
+    }
+}
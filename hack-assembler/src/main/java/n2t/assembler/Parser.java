@@ -0,0 +1,380 @@
+package n2t.assembler;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Unpacks instruction into underlying fields
+ *
+ * Instructions are encoded as 16-bit words held in the low-order bits of an {@code int},
+ * and are only converted to text when written out by the {@code HackWriter}.
+ */
+public class Parser {
+    // Returned by parseLine for lines that do not produce an instruction
+    public static final int NO_INSTRUCTION = -1;
+
+    // The three leading bits shared by every C-instruction
+    private static final int C_INSTRUCTION_PREFIX = 0b111 << 13;
+
+    // Only the low 15 bits of an address fit in an A-instruction
+    private static final int ADDRESS_MASK = 0x7FFF;
+
+    // Used during parallel read, each instruction's token is recorded as its kind, bounds, delimiter offsets
+    // and line number
+    private static final int TOKEN_STRIDE = 6;
+
+    // Used during parallel read, ranges of at most this many instructions are encoded by a single task
+    private static final int PARALLEL_CHUNK_SIZE = 8192;
+
+    Code code;                          // Holds the mapping of assembly language code to dest, comp, and jump bits
+    SymbolTable symbolTable;            // Manages the symbol table for variable and label look up
+    int labelDeclarationLineNumber;     // Used during first-pass read, tracks which line to set initial label declarations to
+    int[] instructions;                 // Used during single-pass read, holds each encoded instruction in order
+    int instructionCount;               // Used during single-pass read, the number of instructions held so far
+    int[] referenceHeads;               // Used during single-pass read, the last instruction referencing each unresolved symbol entry
+
+    Parser() {
+        this.code = new Code();
+        this.symbolTable = new SymbolTable();
+        this.labelDeclarationLineNumber = 0;
+        this.instructions = new int[1024];
+        this.instructionCount = 0;
+        this.referenceHeads = new int[64];
+        Arrays.fill(this.referenceHeads, NO_INSTRUCTION);
+    }
+
+    /**
+     * Adds label declarations to the symbol table during the first-pass read of an assembly file
+     * @param currentLine the line of the assembly file being parsed
+     */
+    public void checkLabelDeclaration(String currentLine) {
+        Lexer lexer = Lexer.ofLine(currentLine);
+        if (lexer.advance()) {
+            checkLabelDeclaration(lexer);
+        }
+    }
+
+    /**
+     * Adds label declarations to the symbol table during the first-pass read of an assembly file
+     * @param lexer the lexer, positioned on a coding line of the assembly file
+     */
+    public void checkLabelDeclaration(Lexer lexer) {
+        // If the coding line is a label declaration, then add it to the SymbolTable,
+        // otherwise it is an instruction, so increment the line counter
+        if (lexer.kind() == Lexer.Kind.LABEL_DECLARATION) {
+            symbolTable.addLabelDeclaration(lexer.input(), lexer.start(), lexer.end(), labelDeclarationLineNumber);
+        } else {
+            labelDeclarationLineNumber++;
+        }
+    }
+
+    /**
+     * Encodes a line during the second-pass read of an assembly file
+     * @param currentLine the line of the assembly file being parsed
+     * @return the 16-bit instruction word, or {@link #NO_INSTRUCTION} if the line holds no instruction
+     */
+    public int parseLine(String currentLine) {
+        Lexer lexer = Lexer.ofLine(currentLine);
+        return lexer.advance() ? parseLine(lexer) : NO_INSTRUCTION;
+    }
+
+    /**
+     * Encodes a coding line during the second-pass read of an assembly file
+     * @param lexer the lexer, positioned on a coding line of the assembly file
+     * @return the 16-bit instruction word, or {@link #NO_INSTRUCTION} if the line is a label declaration
+     */
+    public int parseLine(Lexer lexer) {
+        switch (lexer.kind()) {
+            case A_INSTRUCTION:
+                return handleAinstruction(lexer);
+            case C_INSTRUCTION:
+                return handleCinstruction(lexer);
+            default:
+                return NO_INSTRUCTION;
+        }
+    }
+
+    /**
+     * Translates a line during a single-pass read of an assembly file, appending the result to the instruction list.
+     * @param currentLine the line of the assembly file being parsed
+     * @see #parseSinglePass(Lexer)
+     */
+    public void parseSinglePass(String currentLine) {
+        Lexer lexer = Lexer.ofLine(currentLine);
+        if (lexer.advance()) {
+            parseSinglePass(lexer);
+        }
+    }
+
+    /**
+     * Translates a coding line during a single-pass read of an assembly file, appending the result to the instruction list.
+     *
+     * Label declarations are added to the symbol table as they are read, and patch any earlier instructions that
+     * referenced them. A-instructions referencing a symbol that is not yet known are added to the symbol table as
+     * unresolved, and hold a placeholder until the label is declared, or until {@link #finishSinglePass()} allocates
+     * them as variables. The placeholders for each symbol form a chain, each holding the index of the previous
+     * reference to the same symbol, so no separate reference lists are needed.
+     * @param lexer the lexer, positioned on a coding line of the assembly file
+     */
+    public void parseSinglePass(Lexer lexer) {
+        switch (lexer.kind()) {
+            case LABEL_DECLARATION: {
+                // Declare the label at the next instruction's address, then backpatch any forward references to it
+                int entry = symbolTable.addLabelDeclaration(lexer.input(), lexer.start(), lexer.end(), instructionCount);
+                patchReferences(entry, instructionCount);
+                break;
+            }
+            case A_INSTRUCTION: {
+                // Numeric addresses and symbols already resolved can be encoded immediately,
+                // otherwise the reference is chained onto the symbol's earlier references
+                if (lexer.isNumeric()) {
+                    appendInstruction(lexer.parseAddress());
+                } else {
+                    int entry = symbolTable.entryOf(lexer.input(), lexer.start(), lexer.end());
+                    int address = symbolTable.valueAt(entry);
+                    if (address != SymbolTable.UNRESOLVED) {
+                        appendInstruction(address & ADDRESS_MASK);
+                    } else {
+                        if (entry >= referenceHeads.length) {
+                            int length = referenceHeads.length;
+                            referenceHeads = Arrays.copyOf(referenceHeads, Math.max(length * 2, entry + 1));
+                            Arrays.fill(referenceHeads, length, referenceHeads.length, NO_INSTRUCTION);
+                        }
+                        appendInstruction(referenceHeads[entry]);
+                        referenceHeads[entry] = instructionCount - 1;
+                    }
+                }
+                break;
+            }
+            default:
+                appendInstruction(handleCinstruction(lexer));
+                break;
+        }
+    }
+
+    /**
+     * Completes a single-pass read by allocating every symbol that was never declared as a label
+     * as a variable, in order of first use, so the output matches a two-pass read
+     *
+     * Symbol table entries are numbered in the order they were added, and an unresolved symbol is
+     * added on its first use, so walking the entries in order allocates variables in first-use order.
+     * @return the encoded instructions in program order
+     */
+    public int[] finishSinglePass() {
+        for (int entry = 0; entry < symbolTable.size(); entry++) {
+            if (symbolTable.valueAt(entry) == SymbolTable.UNRESOLVED) {
+                patchReferences(entry, symbolTable.resolveVariable(entry));
+            }
+        }
+
+        return Arrays.copyOf(instructions, instructionCount);
+    }
+
+    /**
+     * Translates a whole assembly file, encoding its instructions in parallel once every symbol is known.
+     *
+     * The file is first scanned once to declare labels and record the position of each instruction. Symbolic
+     * A-instructions are then resolved in program order, so variables are allocated in first-use order exactly as
+     * in a two-pass read. With the symbol table complete, the remaining instructions are independent, and are split
+     * into chunks encoded by the given pool into their own positions of the result.
+     * @param lexer the lexer, positioned before the first line of the assembly file
+     * @param pool the pool used to encode the chunks
+     * @return the encoded instructions in program order
+     * @throws IllegalArgumentException if a line is not valid assembly code, naming the first such line
+     */
+    public int[] parseParallel(Lexer lexer, ForkJoinPool pool) {
+        ByteBuffer source = lexer.input();
+
+        // First pass, declaring labels and recording the token of each instruction
+        int[] tokens = new int[1024 * TOKEN_STRIDE];
+        int count = 0;
+        while (lexer.advance()) {
+            if (lexer.kind() == Lexer.Kind.LABEL_DECLARATION) {
+                try {
+                    symbolTable.addLabelDeclaration(source, lexer.start(), lexer.end(), count);
+                } catch (RuntimeException e) {
+                    throw Assembler.atLine(lexer.lineNumber(), e);
+                }
+                continue;
+            }
+
+            if ((count + 1) * TOKEN_STRIDE > tokens.length) {
+                tokens = Arrays.copyOf(tokens, tokens.length * 2);
+            }
+            int offset = count * TOKEN_STRIDE;
+            tokens[offset] = lexer.kind().ordinal();
+            tokens[offset + 1] = lexer.start();
+            tokens[offset + 2] = lexer.end();
+            tokens[offset + 3] = lexer.equalsIndex();
+            tokens[offset + 4] = lexer.semicolonIndex();
+            tokens[offset + 5] = lexer.lineNumber();
+            count++;
+        }
+
+        // Resolve symbolic A-instructions in program order, so variables are allocated in first-use order
+        int[] words = new int[count];
+        for (int i = 0; i < count; i++) {
+            int offset = i * TOKEN_STRIDE;
+            if (tokens[offset] == Lexer.Kind.A_INSTRUCTION.ordinal()
+                    && !Lexer.isNumeric(source, tokens[offset + 1], tokens[offset + 2])) {
+                try {
+                    words[i] = symbolTable.checkSymbolTable(source, tokens[offset + 1], tokens[offset + 2])
+                            & ADDRESS_MASK;
+                } catch (RuntimeException e) {
+                    throw Assembler.atLine(tokens[offset + 5], e);
+                }
+            }
+        }
+
+        // Encode the remaining instructions, each chunk writing only its own range of words. Failures are
+        // recorded rather than thrown, since the pool would rethrow them wrapped in copies of themselves
+        EncodeFailure failure = new EncodeFailure();
+        pool.invoke(new EncodeTask(this, source, tokens, words, 0, count, failure));
+        if (failure.error != null) {
+            throw Assembler.atLine(failure.lineNumber, failure.error);
+        }
+        return words;
+    }
+
+    /**
+     * Encodes the numeric A-instructions and C-instructions in a range of recorded tokens, splitting
+     * the range in half until it is small enough to encode directly
+     */
+    // Tasks are never serialized, they only run on the pool in this process
+    @SuppressWarnings("serial")
+    private static final class EncodeTask extends RecursiveAction {
+        private final Parser parser;
+        private final ByteBuffer source;
+        private final int[] tokens;
+        private final int[] words;
+        private final int from;
+        private final int to;
+        private final EncodeFailure failure;
+
+        EncodeTask(Parser parser, ByteBuffer source, int[] tokens, int[] words, int from, int to,
+                EncodeFailure failure) {
+            this.parser = parser;
+            this.source = source;
+            this.tokens = tokens;
+            this.words = words;
+            this.from = from;
+            this.to = to;
+            this.failure = failure;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > PARALLEL_CHUNK_SIZE) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new EncodeTask(parser, source, tokens, words, from, middle, failure),
+                        new EncodeTask(parser, source, tokens, words, middle, to, failure));
+                return;
+            }
+
+            // Each task reads through its own view of the source, since buffers are not shared safely between threads
+            ByteBuffer view = source.duplicate();
+            for (int i = from; i < to; i++) {
+                int offset = i * TOKEN_STRIDE;
+                int start = tokens[offset + 1];
+                int end = tokens[offset + 2];
+
+                try {
+                    if (tokens[offset] == Lexer.Kind.C_INSTRUCTION.ordinal()) {
+                        words[i] = parser.encodeCinstruction(view, start, end, tokens[offset + 3], tokens[offset + 4]);
+                    } else if (Lexer.isNumeric(view, start, end)) {
+                        words[i] = Lexer.parseAddress(view, start, end);
+                    }
+                } catch (RuntimeException e) {
+                    failure.record(tokens[offset + 5], e);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * The first line, in program order, that any encode task failed on
+     */
+    private static final class EncodeFailure {
+        private int lineNumber = Integer.MAX_VALUE;
+        private RuntimeException error;
+
+        synchronized void record(int lineNumber, RuntimeException error) {
+            if (lineNumber < this.lineNumber) {
+                this.lineNumber = lineNumber;
+                this.error = error;
+            }
+        }
+    }
+
+    // Adds an encoded instruction to the end of the instruction list, growing it as needed
+    private void appendInstruction(int instruction) {
+        if (instructionCount == instructions.length) {
+            instructions = Arrays.copyOf(instructions, instructions.length * 2);
+        }
+        instructions[instructionCount++] = instruction;
+    }
+
+    // Walks the chain of placeholders referencing the given entry, replacing each with the resolved address
+    private void patchReferences(int entry, int address) {
+        if (entry >= referenceHeads.length) {
+            return;
+        }
+
+        int index = referenceHeads[entry];
+        while (index != NO_INSTRUCTION) {
+            int previous = instructions[index];
+            instructions[index] = address & ADDRESS_MASK;
+            index = previous;
+        }
+        referenceHeads[entry] = NO_INSTRUCTION;
+    }
+
+    private int handleAinstruction(Lexer lexer) {
+        if (lexer.isNumeric()) {
+            return lexer.parseAddress();
+        } else {
+            return symbolTable.checkSymbolTable(lexer.input(), lexer.start(), lexer.end()) & ADDRESS_MASK;
+        }
+    }
+
+    /**
+     * Decomposes a C-instruction into component 'comp', 'dest', and 'jump' parts.
+     *
+     * Given an assembly line in the form 'X=Y;Z':
+     * - X (before the '=') is encoded into the 'dest' bits.
+     * - Y (between the '=' and ';') is endcoded into the comp bits.
+     * - Z (after the ';') is encodd into the jump bits.
+     *
+     * The '=' and ';' characters serve as delimiters for 'X', 'Y', and 'Z', and their positions
+     * have already been found by the {@code Lexer}.
+     *
+     * Instructions always contain a 'Y' part, but one of the 'X' or 'Z' parts may be null.
+     *
+     * @param lexer the lexer, positioned on an assembly-form C-instruction
+     * @return the 16-bit C-instruction word
+     */
+    private int handleCinstruction(Lexer lexer) {
+        return encodeCinstruction(lexer.input(), lexer.start(), lexer.end(),
+                lexer.equalsIndex(), lexer.semicolonIndex());
+    }
+
+    // Encodes the C-instruction between start and end, given the offsets of its '=' and ';' delimiters or -1
+    private int encodeCinstruction(ByteBuffer source, int start, int end, int XYdelimiter, int YZdelimiter) {
+        // The Y part starts after the '=' if there is one, and ends before the ';' if there is one
+        int Ystart = XYdelimiter != -1 ? XYdelimiter + 1 : start;
+        int Yend = YZdelimiter != -1 ? YZdelimiter : end;
+
+        // A missing X or Z part is decoded as an empty field
+        int Xend = XYdelimiter != -1 ? XYdelimiter : start;
+        int Zstart = YZdelimiter != -1 ? YZdelimiter + 1 : end;
+
+        // Layout is 111a cccc ccdd djjj, with the 'a' bit held as the top bit of the comp field
+        return C_INSTRUCTION_PREFIX
+                | code.decodeComp(source, Ystart, Yend) << 6
+                | code.decodeDest(source, start, Xend) << 3
+                | code.decodeJump(source, Zstart, end);
+    }
+}
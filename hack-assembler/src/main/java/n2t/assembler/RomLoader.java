@@ -0,0 +1,62 @@
+package n2t.assembler;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Loads a ROM image written by the {@code HackBinWriter}, for use by emulators and test harnesses
+ */
+public class RomLoader {
+    private RomLoader() {}
+
+    /**
+     * Memory-maps a .hackbin file and returns its instruction words without copying them
+     * @param path the .hackbin file
+     * @return a read-only buffer of the instruction words in program order
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if the file is not a valid .hackbin file, or its checksum does not match
+     */
+    public static ShortBuffer map(Path path) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // The mapping stays valid after the channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        buffer.order(ByteOrder.BIG_ENDIAN);
+
+        if (buffer.limit() < HackBinWriter.HEADER_BYTES || buffer.getInt(0) != HackBinWriter.MAGIC) {
+            throw new IllegalArgumentException(path + " is not a .hackbin file.");
+        }
+
+        int count = buffer.getInt(4);
+        int end = HackBinWriter.HEADER_BYTES + count * 2;
+        if (count < 0 || end != buffer.limit()) {
+            throw new IllegalArgumentException(path + " holds " + (buffer.limit() - HackBinWriter.HEADER_BYTES)
+                    + " bytes of instructions, but its header declares " + count + " words.");
+        }
+        if (HackBinWriter.checksum(buffer, HackBinWriter.HEADER_BYTES, end) != buffer.getInt(8)) {
+            throw new IllegalArgumentException(path + " does not match its checksum.");
+        }
+
+        return buffer.slice(HackBinWriter.HEADER_BYTES, count * 2).order(ByteOrder.BIG_ENDIAN).asShortBuffer();
+    }
+
+    /**
+     * Loads a .hackbin file into an array of instruction words
+     * @param path the .hackbin file
+     * @return the instruction words in program order
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if the file is not a valid .hackbin file, or its checksum does not match
+     */
+    public static short[] load(Path path) throws IOException {
+        ShortBuffer words = map(path);
+        short[] rom = new short[words.remaining()];
+        words.get(rom);
+        return rom;
+    }
+}
@@ -0,0 +1,336 @@
+package n2t.assembler;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Manages the symbol table, including label declaration and variable setting/value retrieval
+ * Label declarations and variables are set from register 16 onwards
+ *
+ * Symbols are stored in an open-addressing hash table keyed on their bytes, so a symbol can be looked up
+ * straight from a slice of the source without creating a {@code String}. Each entry has an index, assigned in
+ * insertion order, that callers may hold on to. Every table starts as a copy of a shared, never modified table
+ * of the predefined symbols, so separate assemblies in the same process do not see each other's symbols.
+ */
+public class SymbolTable {
+    // Value of a symbol that has been referenced but not yet declared as a label or allocated as a variable
+    public static final int UNRESOLVED = -1;
+
+    // Returned by find when a symbol is not in the table
+    public static final int NOT_FOUND = -1;
+
+    // The predefined symbols, copied into every new table and never modified itself
+    private static final SymbolTable PREDEFINED = new SymbolTable(32);
+    static {
+        PREDEFINED.initializePreDefinedSymbols();
+    }
+
+    // Tracks which position to assign the next declared variable
+    private int nextAvailableRegister;
+
+    private int[] slots;            // Open-addressing table of entry index + 1, where 0 marks an empty slot
+    private byte[] keyBytes;        // The bytes of every symbol, stored back to back
+    private int keyBytesUsed;       // The number of bytes used in keyBytes
+    private int[] keyOffsets;       // The offset of each entry's symbol in keyBytes
+    private int[] keyLengths;       // The length of each entry's symbol
+    private int[] hashes;           // The hash of each entry's symbol
+    private int[] values;           // The address each entry's symbol refers to
+    private int size;               // The number of entries
+
+    public SymbolTable() {
+        // Start variables from register 16 onwards
+        nextAvailableRegister = 16;
+
+        // Start from a copy of the predefined symbols
+        slots = PREDEFINED.slots.clone();
+        keyBytes = PREDEFINED.keyBytes.clone();
+        keyBytesUsed = PREDEFINED.keyBytesUsed;
+        keyOffsets = PREDEFINED.keyOffsets.clone();
+        keyLengths = PREDEFINED.keyLengths.clone();
+        hashes = PREDEFINED.hashes.clone();
+        values = PREDEFINED.values.clone();
+        size = PREDEFINED.size;
+    }
+
+    // Creates an empty table with room for the given number of entries
+    private SymbolTable(int capacity) {
+        nextAvailableRegister = 16;
+        slots = new int[Integer.highestOneBit(capacity) * 4];
+        keyBytes = new byte[capacity * 8];
+        keyOffsets = new int[capacity];
+        keyLengths = new int[capacity];
+        hashes = new int[capacity];
+        values = new int[capacity];
+    }
+
+    /**
+     * Returns the address of a symbol, allocating it as the next variable if it is not yet known
+     * @param source the bytes holding the symbol
+     * @param start the offset of the symbol's first byte
+     * @param end the offset just past the symbol's last byte
+     * @return the address of the symbol
+     */
+    public int checkSymbolTable(ByteBuffer source, int start, int end) {
+        return resolveVariable(entryOf(source, start, end));
+    }
+
+    public int checkSymbolTable(String symbol) {
+        int entry = find(symbol);
+        if (entry == NOT_FOUND) {
+            entry = add(symbol, UNRESOLVED);
+        }
+        return resolveVariable(entry);
+    }
+
+    /**
+     * Adds a label declaration to the symbol table with the given address. Does not use the {@code nextAvailableRegister}
+     * @param source the bytes holding the label
+     * @param start the offset of the label's first byte
+     * @param end the offset just past the label's last byte
+     * @param address the address of the line immediately following the label declaration
+     * @return the index of the label's entry
+     * @throws IllegalStateException if the label already exists
+     */
+    public int addLabelDeclaration(ByteBuffer source, int start, int end, int address) {
+        int entry = entryOf(source, start, end);
+        declareLabel(entry, address);
+        return entry;
+    }
+
+    public void addLabelDeclaration(String label, int address) {
+        int entry = find(label);
+        if (entry == NOT_FOUND) {
+            entry = add(label, UNRESOLVED);
+        }
+        declareLabel(entry, address);
+    }
+
+    /**
+     * Checks if a given symbol is already in the table
+     * @param symbol the symbol being check
+     * @return true if the symbol is already in the table, false otherwise
+     */
+    public boolean inTable(String symbol) {
+        return find(symbol) != NOT_FOUND;
+    }
+
+    /**
+     * Returns a symbol value, expecting that it already exists
+     * @param symbol the key to the key-value pair
+     * @return the value to the key-value pair
+     */
+    public int getSymbolValue(String symbol) {
+        return values[find(symbol)];
+    }
+
+    /**
+     * Returns the index of the entry for a symbol, adding it as {@link #UNRESOLVED} if it is not yet in the table
+     * @param source the bytes holding the symbol
+     * @param start the offset of the symbol's first byte
+     * @param end the offset just past the symbol's last byte
+     * @return the index of the symbol's entry
+     */
+    public int entryOf(ByteBuffer source, int start, int end) {
+        int hash = hash(source, start, end);
+        int mask = slots.length - 1;
+
+        for (int slot = hash & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+            int entry = slots[slot] - 1;
+            if (hashes[entry] == hash && matches(entry, source, start, end)) {
+                return entry;
+            }
+        }
+
+        int entry = newEntry(hash, end - start, UNRESOLVED);
+        for (int i = start; i < end; i++) {
+            keyBytes[keyBytesUsed++] = source.get(i);
+        }
+        return entry;
+    }
+
+    /**
+     * Returns the address held by an entry
+     * @param entry the index of the entry
+     * @return the address, or {@link #UNRESOLVED} if the symbol is neither a label nor a variable yet
+     */
+    public int valueAt(int entry) {
+        return values[entry];
+    }
+
+    /**
+     * Declares an entry as a label at the given address
+     * @param entry the index of the entry
+     * @param address the address of the line immediately following the label declaration
+     * @throws IllegalStateException if the entry is already a predefined symbol, label or variable
+     */
+    public void declareLabel(int entry, int address) {
+        if (values[entry] != UNRESOLVED) {
+            // Check if the label already exists, i.e. is the assembly code attempting to declare the same method twice
+            throw new IllegalStateException("Attempting to declare a duplicate label. Labels may only be declared once.");
+        }
+        values[entry] = address;
+    }
+
+    /**
+     * Returns the address of an entry, allocating it as the next variable if it is still unresolved
+     * @param entry the index of the entry
+     * @return the address of the entry
+     */
+    public int resolveVariable(int entry) {
+        if (values[entry] == UNRESOLVED) {
+            values[entry] = nextAvailableRegister;
+            nextAvailableRegister++;
+        }
+        return values[entry];
+    }
+
+    /**
+     * Returns the number of entries, including the predefined symbols. Entry indices run from zero up to this
+     * number in the order the symbols were first added
+     * @return the number of entries
+     */
+    public int size() {
+        return size;
+    }
+
+    // Returns the index of the entry for a symbol given as a String, or NOT_FOUND
+    private int find(String symbol) {
+        int hash = hash(symbol);
+        int mask = slots.length - 1;
+
+        for (int slot = hash & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+            int entry = slots[slot] - 1;
+            if (hashes[entry] == hash && matches(entry, symbol)) {
+                return entry;
+            }
+        }
+        return NOT_FOUND;
+    }
+
+    // Adds a symbol given as a String, expecting that it is not already in the table
+    private int add(String symbol, int value) {
+        int entry = newEntry(hash(symbol), symbol.length(), value);
+        for (int i = 0; i < symbol.length(); i++) {
+            keyBytes[keyBytesUsed++] = (byte) symbol.charAt(i);
+        }
+        return entry;
+    }
+
+    // Creates an entry and places it in the table, leaving room for its key bytes at the end of keyBytes
+    private int newEntry(int hash, int length, int value) {
+        if (size == values.length) {
+            int capacity = size * 2;
+            keyOffsets = Arrays.copyOf(keyOffsets, capacity);
+            keyLengths = Arrays.copyOf(keyLengths, capacity);
+            hashes = Arrays.copyOf(hashes, capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+        if (keyBytesUsed + length > keyBytes.length) {
+            keyBytes = Arrays.copyOf(keyBytes, Math.max(keyBytes.length * 2, keyBytesUsed + length));
+        }
+
+        int entry = size++;
+        keyOffsets[entry] = keyBytesUsed;
+        keyLengths[entry] = length;
+        hashes[entry] = hash;
+        values[entry] = value;
+
+        // Keep the table at most half full so probe sequences stay short
+        if (size * 2 > slots.length) {
+            rehash(slots.length * 2);
+        } else {
+            insertSlot(entry);
+        }
+        return entry;
+    }
+
+    // Rebuilds the slots with the given length, re-inserting every entry
+    private void rehash(int length) {
+        slots = new int[length];
+        for (int entry = 0; entry < size; entry++) {
+            insertSlot(entry);
+        }
+    }
+
+    // Places an entry in the first free slot of its probe sequence
+    private void insertSlot(int entry) {
+        int mask = slots.length - 1;
+        int slot = hashes[entry] & mask;
+        while (slots[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        slots[slot] = entry + 1;
+    }
+
+    private boolean matches(int entry, ByteBuffer source, int start, int end) {
+        if (keyLengths[entry] != end - start) {
+            return false;
+        }
+        int offset = keyOffsets[entry];
+        for (int i = start; i < end; i++) {
+            if (keyBytes[offset++] != source.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean matches(int entry, String symbol) {
+        if (keyLengths[entry] != symbol.length()) {
+            return false;
+        }
+        int offset = keyOffsets[entry];
+        for (int i = 0; i < symbol.length(); i++) {
+            if (keyBytes[offset++] != (byte) symbol.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // The byte and String hashes agree for ASCII symbols, spreading the high bits into the low bits used for slots
+    private static int hash(ByteBuffer source, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + (source.get(i) & 0xFF);
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    private static int hash(String symbol) {
+        int hash = 0;
+        for (int i = 0; i < symbol.length(); i++) {
+            hash = 31 * hash + ((byte) symbol.charAt(i) & 0xFF);
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Initializes the 23 predefined symbols into the symbol table
+     */
+    private void initializePreDefinedSymbols() {
+        add("SCREEN", 16384);
+        add("KBD", 24576);
+        add("SP", 0);
+        add("LCL", 1);
+        add("ARG", 2);
+        add("THIS", 3);
+        add("THAT", 4);
+        add("R0", 0);
+        add("R1", 1);
+        add("R2", 2);
+        add("R3", 3);
+        add("R4", 4);
+        add("R5", 5);
+        add("R6", 6);
+        add("R7", 7);
+        add("R8", 8);
+        add("R9", 9);
+        add("R10", 10);
+        add("R11", 11);
+        add("R12", 12);
+        add("R13", 13);
+        add("R14", 14);
+        add("R15", 15);
+    }
+}
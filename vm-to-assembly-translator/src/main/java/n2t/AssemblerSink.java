@@ -0,0 +1,156 @@
+package n2t;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import n2t.assembler.BlockAssembler;
+import n2t.assembler.HackBinWriter;
+import n2t.assembler.HackWriter;
+
+/**
+ * Assembles the assembly code as it is written, producing the machine code
+ * without an .asm file in between.
+ *
+ * <p>Each block from the {@code CodeWriter} is copied onto a bounded queue,
+ * and a second thread takes the blocks off the queue and feeds them to a
+ * {@code BlockAssembler}. Labels are resolved while the translation is still
+ * running, and the translator waits whenever it gets too far ahead. Once the
+ * sink is closed, the machine code is written as a .hack file, or as a packed
+ * .hackbin ROM image.
+ *
+ * <p>If the assembly code is not valid, the blocks after the error are dropped,
+ * and the error is reported once, when the sink is closed.
+ *
+ * <p>The assembly code can also be passed on to another sink, to keep the
+ * .asm file for debugging.
+ */
+public class AssemblerSink implements OutputSink {
+  // The number of blocks the translator may get ahead of the assembler
+  private static final int QUEUE_BLOCKS = 16;
+
+  // Put on the queue after the last block, identified by reference
+  private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+  private final BlockingQueue<ByteBuffer> queue = new ArrayBlockingQueue<>(QUEUE_BLOCKS);
+  private final BlockAssembler assembler = new BlockAssembler();
+  private final Thread thread;
+  private final Path outPath;
+  private final boolean binary;
+  // The sink keeping the assembly code, or null if it is not kept
+  private final OutputSink asmSink;
+  // The first error the assembler thread raised, set before it stops assembling
+  private volatile RuntimeException failure;
+  private boolean closed;
+
+  /**
+   * Starts the assembler thread, which waits for the first block. It is a daemon
+   * thread, so a sink that is never closed does not keep the JVM running.
+   *
+   * @param outPath the path of the machine code file
+   * @param binary whether to write a packed .hackbin file instead of a .hack file
+   * @param asmSink the sink to pass the assembly code on to, or {@code null} to not keep it
+   */
+  public AssemblerSink(Path outPath, boolean binary, OutputSink asmSink) {
+    this.outPath = outPath;
+    this.binary = binary;
+    this.asmSink = asmSink;
+    this.thread = new Thread(this::assembleBlocks, "assembler");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Queues a block for the assembler thread, waiting while the queue is full. Once the
+   * assembler has failed, the block is only passed on.
+   *
+   * @param text one or more lines of assembly code, each ending with a newline
+   * @throws IOException if the block cannot be passed on, or the wait is interrupted
+   */
+  @Override
+  public void write(CharSequence text) throws IOException {
+    if (asmSink != null) {
+      asmSink.write(text);
+    }
+    if (failure != null) {
+      return;
+    }
+    // The CodeWriter reuses its buffer, so the block is copied before it is queued
+    put(ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.US_ASCII)));
+  }
+
+  /**
+   * Waits for the assembler thread to read every block, then writes the machine code file
+   * and closes the sink keeping the assembly code.
+   *
+   * @throws IOException if the assembly code is not valid, or a file cannot be written
+   */
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      put(END);
+      thread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted waiting for the assembler");
+    } finally {
+      if (asmSink != null) {
+        asmSink.close();
+      }
+    }
+    checkFailure();
+
+    int[] instructions = assembler.finish();
+    if (binary) {
+      HackBinWriter.write(outPath, instructions);
+    } else {
+      try (HackWriter hackWriter = new HackWriter(outPath.toString())) {
+        hackWriter.writeAll(instructions);
+      }
+    }
+  }
+
+  // Runs on the assembler thread, assembling each block until the last one
+  private void assembleBlocks() {
+    try {
+      ByteBuffer block;
+      while ((block = queue.take()) != END) {
+        // After a failure, keep taking blocks so the translator never waits on a full queue
+        if (failure == null) {
+          try {
+            assembler.assemble(block);
+          } catch (RuntimeException e) {
+            failure = e;
+          }
+        }
+      }
+    } catch (InterruptedException e) {
+      failure = new IllegalStateException("Assembler thread interrupted", e);
+    }
+  }
+
+  // Puts a block on the queue, waiting for room
+  private void put(ByteBuffer block) throws IOException {
+    try {
+      queue.put(block);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted waiting for the assembler");
+    }
+  }
+
+  // Reports the assembler thread's error, if it has raised one
+  private void checkFailure() throws IOException {
+    RuntimeException e = failure;
+    if (e != null) {
+      throw new IOException("Error assembling the translated code: " + e.getMessage(), e);
+    }
+  }
+}
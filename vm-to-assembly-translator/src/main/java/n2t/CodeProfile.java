@@ -0,0 +1,349 @@
+package n2t;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Measures the assembly code written by a {@code CodeWriter} for each function
+ * and each kind of VM command, to show where the ROM and the time go.
+ *
+ * <p>The code of each command is handed over as a region of the output. The
+ * instructions in a region are counted as the ROM words it takes, and its
+ * worst-case straight-line cycle count is the longest path through it, one
+ * cycle per instruction, taking every branch that makes the path longer. Loops
+ * are followed once, and a jump to a shared runtime subroutine adds the longest
+ * path through the subroutine. The code of a called function is counted in that
+ * function, not at the call.
+ *
+ * <p>A comparison fused with the if-goto after it, and a call written as a tail
+ * call with its return, are one region, so their kind joins the mnemonics with
+ * a '+'. The bootstrap code, with the shared runtime subroutines, is the
+ * "bootstrap" kind of the "(bootstrap)" function.
+ */
+public class CodeProfile {
+  // Labels of the shared runtime subroutines start with this prefix
+  private static final String ROUTINE_PREFIX = "$$";
+
+  // Totals for each function and each kind, in the order first written
+  private final Map<String, Entry> functions = new LinkedHashMap<>();
+  private final Map<String, Entry> kinds = new LinkedHashMap<>();
+
+  // The longest path through each shared runtime subroutine, by its label
+  private final Map<String, Integer> routineCycles = new HashMap<>();
+
+  // The function and kind of the current region, or null before the first region
+  private Entry function;
+  private Entry kind;
+
+  // The instructions of the current region
+  private int instructionCount;
+  // Each label of the current region, with the index of the instruction after it
+  private final Map<String, Integer> labels = new HashMap<>();
+  // The symbol of the last A-instruction, while A still holds it, otherwise null
+  private String address;
+  // The index, target and condition of each jump of the current region, in order
+  private int jumpCount;
+  private int[] jumpIndices = new int[8];
+  private String[] jumpTargets = new String[8];
+  private boolean[] unconditionalJumps = new boolean[8];
+  // The longest path from each instruction of the current region, reused between regions
+  private int[] pathCycles = new int[64];
+
+  /**
+   * Ends the current region, and starts a new one.
+   *
+   * @param functionName the function the new region belongs to
+   * @param kindName the kind of the commands written in the new region
+   */
+  public void begin(String functionName, String kindName) {
+    end();
+    function = functions.computeIfAbsent(functionName, Entry::new);
+    kind = kinds.computeIfAbsent(kindName, Entry::new);
+  }
+
+  /**
+   * Reads code of the current region. Ignored before the first region.
+   *
+   * @param code the code, holding whole lines between the two indices
+   * @param from the index of the first character to read
+   * @param to the index just past the last character to read
+   */
+  public void append(CharSequence code, int from, int to) {
+    if (function == null) {
+      return;
+    }
+    int start = from;
+    for (int i = from; i < to; i++) {
+      if (code.charAt(i) == '\n') {
+        readLine(code, start, i);
+        start = i + 1;
+      }
+    }
+    if (start < to) {
+      readLine(code, start, to);
+    }
+  }
+
+  /**
+   * Measures the current region and adds it to the totals of its function and kind.
+   */
+  public void end() {
+    if (function == null) {
+      return;
+    }
+    int cycles = measureRegion();
+    function.add(instructionCount, cycles);
+    kind.add(instructionCount, cycles);
+    function = null;
+    kind = null;
+    instructionCount = 0;
+    labels.clear();
+    address = null;
+    jumpCount = 0;
+  }
+
+  /**
+   * Adds the totals of another profile, such as one of a single file.
+   *
+   * @param other the profile to add
+   */
+  public void add(CodeProfile other) {
+    for (Entry entry : other.functions.values()) {
+      functions.computeIfAbsent(entry.name, Entry::new).add(entry);
+    }
+    for (Entry entry : other.kinds.values()) {
+      kinds.computeIfAbsent(entry.name, Entry::new).add(entry);
+    }
+  }
+
+  /**
+   * Uses the shared runtime subroutines measured by another profile, for code
+   * written without the subroutines themselves.
+   *
+   * @param other the profile that measured the subroutines
+   */
+  public void addRoutineCycles(CodeProfile other) {
+    routineCycles.putAll(other.routineCycles);
+  }
+
+  /**
+   * Returns a text report of the functions taking the most ROM words, and of
+   * every kind of command.
+   *
+   * @param top the number of functions listed
+   * @return the report, one line per function or kind
+   */
+  public String report(int top) {
+    long instructions = 0;
+    long cycles = 0;
+    for (Entry entry : kinds.values()) {
+      instructions += entry.instructions;
+      cycles += entry.cycles;
+    }
+
+    StringBuilder report = new StringBuilder();
+    report.append("Profile: ").append(count(instructions, "instruction")).append(", ")
+        .append(count(cycles, "worst-case straight-line cycle")).append('\n');
+    List<Entry> sortedFunctions = sorted(functions);
+    report.append("Top ").append(Math.min(top, sortedFunctions.size())).append(" of ")
+        .append(count(sortedFunctions.size(), "function")).append(" by instructions:\n");
+    for (Entry entry : sortedFunctions.subList(0, Math.min(top, sortedFunctions.size()))) {
+      entry.appendLine(report, instructions);
+    }
+    report.append("Command kinds by instructions:\n");
+    for (Entry entry : sorted(kinds)) {
+      entry.appendLine(report, instructions);
+    }
+    return report.toString();
+  }
+
+  /**
+   * Returns the totals of every function and kind as JSON, in the order they
+   * were first written, so that profiles of two builds can be compared.
+   *
+   * @return the JSON object
+   */
+  public String toJson() {
+    StringBuilder json = new StringBuilder("{\n");
+    appendJson(json, "functions", functions);
+    json.append(",\n");
+    appendJson(json, "kinds", kinds);
+    json.append("\n}\n");
+    return json.toString();
+  }
+
+  // Appends a named array of the given entries to the JSON object
+  private static void appendJson(StringBuilder json, String name, Map<String, Entry> entries) {
+    json.append("  \"").append(name).append("\": [");
+    boolean first = true;
+    for (Entry entry : entries.values()) {
+      json.append(first ? "\n" : ",\n");
+      first = false;
+      json.append("    {\"name\": \"");
+      for (int i = 0; i < entry.name.length(); i++) {
+        char c = entry.name.charAt(i);
+        if (c == '"' || c == '\\') {
+          json.append('\\');
+        }
+        json.append(c);
+      }
+      json.append("\", \"commands\": ").append(entry.commands)
+          .append(", \"instructions\": ").append(entry.instructions)
+          .append(", \"cycles\": ").append(entry.cycles).append('}');
+    }
+    json.append(first ? "]" : "\n  ]");
+  }
+
+  // Returns a count followed by the noun, in the plural unless the count is 1
+  private static String count(long count, String noun) {
+    return count + " " + noun + (count == 1 ? "" : "s");
+  }
+
+  // Returns the entries with the most instructions first, keeping the order of equal entries
+  private static List<Entry> sorted(Map<String, Entry> entries) {
+    List<Entry> sorted = new ArrayList<>(entries.values());
+    sorted.sort((a, b) -> Long.compare(b.instructions, a.instructions));
+    return sorted;
+  }
+
+  // Reads a line of the current region, the same way the CodeWriter counts its instructions
+  private void readLine(CharSequence code, int from, int to) {
+    if (from == to || code.charAt(from) == '/' && to - from > 1 && code.charAt(from + 1) == '/') {
+      return;
+    }
+    char first = code.charAt(from);
+    if (first == '(') {
+      labels.put(code.subSequence(from + 1, to - 1).toString(), instructionCount);
+    } else if (first == '@') {
+      char symbolStart = to - from > 1 ? code.charAt(from + 1) : '0';
+      address = symbolStart >= '0' && symbolStart <= '9' ? null : code.subSequence(from + 1, to).toString();
+      instructionCount++;
+    } else {
+      int semicolon = -1;
+      boolean setsA = false;
+      for (int i = from; i < to; i++) {
+        char c = code.charAt(i);
+        if (c == '=') {
+          setsA = indexOf(code, 'A', from, i) != -1;
+        } else if (c == ';') {
+          semicolon = i;
+          break;
+        }
+      }
+      if (semicolon != -1) {
+        addJump(address, to - semicolon - 1 == 3 && code.charAt(semicolon + 2) == 'M');
+      }
+      if (setsA) {
+        address = null;
+      }
+      instructionCount++;
+    }
+  }
+
+  // Records a jump at the next instruction, to the given label or to an unknown address if null
+  private void addJump(String target, boolean unconditional) {
+    if (jumpCount == jumpIndices.length) {
+      jumpIndices = Arrays.copyOf(jumpIndices, jumpCount * 2);
+      jumpTargets = Arrays.copyOf(jumpTargets, jumpCount * 2);
+      unconditionalJumps = Arrays.copyOf(unconditionalJumps, jumpCount * 2);
+    }
+    jumpIndices[jumpCount] = instructionCount;
+    jumpTargets[jumpCount] = target;
+    unconditionalJumps[jumpCount] = unconditional;
+    jumpCount++;
+  }
+
+  /**
+   * Finds the longest path through the current region, working back from its
+   * end so that the path from each later instruction is already known.
+   *
+   * <p>A jump forward to a label of the region continues there, while a jump
+   * back leaves the region, so each loop is followed once. A jump out of the
+   * region leaves it, after the subroutine if it is a shared runtime subroutine.
+   *
+   * @return the number of instructions on the longest path from the start
+   */
+  private int measureRegion() {
+    if (pathCycles.length <= instructionCount) {
+      pathCycles = new int[Math.max(pathCycles.length * 2, instructionCount + 1)];
+    }
+    pathCycles[instructionCount] = 0;
+    int jump = jumpCount - 1;
+    for (int i = instructionCount - 1; i >= 0; i--) {
+      if (jump < 0 || jumpIndices[jump] != i) {
+        pathCycles[i] = 1 + pathCycles[i + 1];
+        continue;
+      }
+      int jumped = jumpedCycles(i, jumpTargets[jump]);
+      pathCycles[i] = 1 + (unconditionalJumps[jump] ? jumped : Math.max(jumped, pathCycles[i + 1]));
+      jump--;
+    }
+
+    // Keep the subroutines' paths, for the regions calling them
+    for (Map.Entry<String, Integer> label : labels.entrySet()) {
+      if (label.getKey().startsWith(ROUTINE_PREFIX)) {
+        routineCycles.put(label.getKey(), pathCycles[label.getValue()]);
+      }
+    }
+    return pathCycles[0];
+  }
+
+  // Returns the longest path after a jump from the given instruction to the given label
+  private int jumpedCycles(int index, String target) {
+    if (target == null) {
+      return 0;
+    }
+    Integer label = labels.get(target);
+    if (label != null) {
+      return label > index ? pathCycles[label] : 0;
+    }
+    return routineCycles.getOrDefault(target, 0);
+  }
+
+  private static int indexOf(CharSequence code, char c, int from, int to) {
+    for (int i = from; i < to; i++) {
+      if (code.charAt(i) == c) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * The totals of a function or a kind of command.
+   */
+  private static final class Entry {
+    private final String name;
+    // The regions written, each one command or one fused group of commands
+    private long commands;
+    private long instructions;
+    private long cycles;
+
+    Entry(String name) {
+      this.name = name;
+    }
+
+    void add(int regionInstructions, int regionCycles) {
+      commands++;
+      instructions += regionInstructions;
+      cycles += regionCycles;
+    }
+
+    void add(Entry other) {
+      commands += other.commands;
+      instructions += other.instructions;
+      cycles += other.cycles;
+    }
+
+    // Appends the totals as a line of the report, with the share of all instructions
+    void appendLine(StringBuilder report, long totalInstructions) {
+      report.append("  ").append(name).append(": ").append(count(instructions, "instruction")).append(" (")
+          .append(totalInstructions == 0 ? 0 : instructions * 100 / totalInstructions).append("%), ")
+          .append(count(cycles, "cycle")).append(", ").append(count(commands, "command")).append('\n');
+    }
+  }
+}
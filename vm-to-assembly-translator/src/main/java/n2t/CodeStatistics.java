@@ -0,0 +1,80 @@
+package n2t;
+
+/**
+ * Counts the Hack instructions written by a {@code CodeWriter}, and the ROM words
+ * saved by writing calls, returns and comparisons through the shared runtime subroutines.
+ */
+public class CodeStatistics {
+  // Every instruction written, each taking one word of ROM
+  int instructions;
+
+  // The call, return and comparison sites written through the shared runtime subroutines
+  int sharedSites;
+
+  // The words the shared sites would have taken if written inline
+  int inlineWords;
+
+  // The words the shared sites took, not counting the subroutines themselves
+  int sharedWords;
+
+  // The words of the shared runtime subroutines
+  int routineWords;
+
+  // The words and cycles of each function and kind of command, or null if not profiling
+  CodeProfile profile;
+
+  /**
+   * Adds the counts of another {@code CodeWriter}, such as one that translated a single file.
+   *
+   * @param other the counts to add
+   */
+  public void add(CodeStatistics other) {
+    instructions += other.instructions;
+    sharedSites += other.sharedSites;
+    inlineWords += other.inlineWords;
+    sharedWords += other.sharedWords;
+    routineWords += other.routineWords;
+    if (profile != null && other.profile != null) {
+      profile.add(other.profile);
+    }
+  }
+
+  /**
+   * Returns the number of instructions written, which is also the number of ROM words used.
+   *
+   * @return the number of instructions
+   */
+  public int instructions() {
+    return instructions;
+  }
+
+  /**
+   * Returns the profile of the code written, kept with the profile option.
+   *
+   * @return the profile, or {@code null} if the code was not profiled
+   */
+  public CodeProfile profile() {
+    return profile;
+  }
+
+  /**
+   * Returns the ROM words saved by the shared runtime subroutines, after paying for the
+   * subroutines themselves.
+   *
+   * @return the words saved, negative if the program is too small for the subroutines to pay off
+   */
+  public int romWordsSaved() {
+    return inlineWords - sharedWords - routineWords;
+  }
+
+  /**
+   * Returns a one-line summary of the shared runtime subroutines' savings.
+   *
+   * @return the summary
+   */
+  public String sharedRuntimeReport() {
+    return "Shared runtime: " + sharedSites + " call, return and comparison sites, "
+        + routineWords + " words of subroutines, " + romWordsSaved() + " ROM words saved ("
+        + instructions + " used, " + (instructions + romWordsSaved()) + " without).";
+  }
+}
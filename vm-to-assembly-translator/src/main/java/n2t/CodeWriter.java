@@ -1,9 +1,11 @@
 package n2t;
 
-import java.io.FileWriter;
 import java.io.IOException;
+import java.util.EnumSet;
 import java.util.Set;
 import n2t.commands.CommandType;
+import n2t.ir.Opcode;
+import n2t.ir.Segment;
 
 /**
  * Writes the VM code into assembly code, and outputs it to the
@@ -13,29 +15,190 @@ import n2t.commands.CommandType;
  * elements by the {@code Parser}.
  * 
  * <p>Precedes each block of assembly code by a comment containing
- * the original line of VM code.
+ * the original line of VM code, unless writing lean code, which leaves
+ * out every comment and blank line.
+ *
+ * <p>Lines are collected in a reused buffer and passed to the
+ * {@code OutputSink} in large blocks.
+ *
+ * <p>With the shared runtime option, every call, return and comparison
+ * jumps to a single subroutine written once after the bootstrap code,
+ * instead of being written out in full at each site.
+ *
+ * <p>With the fused branches option, a comparison whose result is only
+ * tested by the following if-goto, possibly through a not, is written as
+ * a direct conditional jump without pushing the result to the stack.
+ *
+ * <p>With the stack cache option, the value on top of the stack may be held
+ * in D instead of RAM, so a push followed by a pop or an arithmetic command
+ * never stores the value. The value is stored to the stack before another
+ * push, and before every label, jump, call and return, so the stack is
+ * entirely in RAM wherever control flow meets.
+ *
+ * <p>With the tail calls option, a call directly followed by a return reuses
+ * the frame of the current function instead of pushing a new one, so chains
+ * of such calls run in constant stack space.
+ *
+ * <p>With the profile option, the code written for each command is handed
+ * to a {@code CodeProfile} kept with the statistics, which totals it by
+ * function and by kind of command.
+ *
+ * <p>Generated labels are scoped by the current file name and numbered
+ * from zero within each file, so each file can be translated by its own
+ * {@code CodeWriter} and the results joined in any order.
  */
 public class CodeWriter {
-  private final FileWriter writer;
+  /**
+   * Changes to the assembly code written, and how it is measured.
+   */
+  public enum Option {
+    // Leaves out the comments and blank lines
+    LEAN,
+    // Writes calls, returns and comparisons as jumps to shared subroutines
+    SHARED_RUNTIME,
+    // Writes a comparison followed by if-goto, with or without a not between, as a single jump
+    FUSE_BRANCHES,
+    // Keeps the top of the stack in D between commands, storing it to the stack only when needed
+    STACK_CACHE,
+    // Writes a call followed by a return as a jump that reuses the current frame
+    TAIL_CALLS,
+    // Profiles the code written for each function and kind of command, without changing it
+    PROFILE
+  }
+
+  // Largest index reached from a segment's base pointer with A=A+1 steps when popping
+  private static final int MAX_STEPPED_INDEX = 6;
+
+  // Number of buffered characters after which the buffer is passed to the sink
+  private static final int FLUSH_THRESHOLD = 1 << 16;
+
+  // Commands written as part of function and return
+  private static final CommandType PUSH_ZERO = Mapping.getCommand(Opcode.PUSH, Segment.CONSTANT, null, 0);
+  private static final CommandType POP_RETURN_VALUE = Mapping.getCommand(Opcode.POP, Segment.ARGUMENT, null, 0);
+
+  // Labels of the shared runtime subroutines
+  private static final String CALL_ROUTINE = "$$CALL";
+  private static final String RETURN_ROUTINE = "$$RETURN";
+  private static final String COMPARISON_ROUTINE = "$$CMP_";
+  private static final String COMPARISON_END = "$$CMP_END";
+  private static final String TAIL_CALL_ROUTINE = "$$TAIL_CALL";
+  private static final String TAIL_CALL_MOVE = "$$TAIL_CALL_MOVE";
+
+  private final OutputSink sink;
+  private final StringBuilder buffer;
+  private final boolean lean;
+  private final boolean sharedRuntime;
+  private final boolean fuseBranches;
+  private final boolean stackCache;
+  private final boolean tailCalls;
+  private final CodeStatistics statistics;
+  // The profile of the code written, or null if not profiling
+  private final CodeProfile profile;
+  // Where the code of the current profiled region starts in the buffer
+  private int profileStart;
+  // The function being written, or null outside of functions
+  private String functionName;
   private String fileBaseName;
   private int logicalCounter;
   private int callCounter;
 
+  // A comparison, and the not after it, held back until it is known whether an if-goto follows
+  private CommandType pendingComparison;
+  private CommandType pendingNot;
+
+  // A call held back until it is known whether a return follows
+  private CommandType pendingCall;
+
+  // Whether the top of the stack is held in D rather than at *(SP - 1)
+  private boolean topInD;
+
   CodeWriter(String outPath) throws IOException {
-    this.writer = new FileWriter(outPath);
+    this(new FileSink(outPath), EnumSet.noneOf(Option.class));
+  }
+
+  /**
+   * Constructs a {@code CodeWriter} writing to the given sink, and writes the bootstrap code.
+   *
+   * @param sink where the assembly code is written
+   * @param options the changes to the assembly code written
+   * @throws IOException if the bootstrap code cannot be written
+   */
+  CodeWriter(OutputSink sink, Set<Option> options) throws IOException {
+    this(sink, options, true);
+  }
+
+  /**
+   * Constructs a {@code CodeWriter} writing to the given sink.
+   *
+   * @param sink where the assembly code is written
+   * @param options the changes to the assembly code written
+   * @param bootstrap whether to write the bootstrap code, which is left out
+   *     when translating a single file of a program in parallel
+   * @throws IOException if the bootstrap code cannot be written
+   */
+  public CodeWriter(OutputSink sink, Set<Option> options, boolean bootstrap) throws IOException {
+    this.sink = sink;
+    this.buffer = new StringBuilder(FLUSH_THRESHOLD + 256);
+    this.lean = options.contains(Option.LEAN);
+    this.sharedRuntime = options.contains(Option.SHARED_RUNTIME);
+    this.fuseBranches = options.contains(Option.FUSE_BRANCHES);
+    this.stackCache = options.contains(Option.STACK_CACHE);
+    this.tailCalls = options.contains(Option.TAIL_CALLS);
+    this.statistics = new CodeStatistics();
+    this.profile = options.contains(Option.PROFILE) ? new CodeProfile() : null;
+    this.statistics.profile = profile;
+    if (profile != null && (sharedRuntime || tailCalls) && !bootstrap) {
+      // The subroutines are written with the bootstrap code, so measure them on their own
+      profile.addRoutineCycles(RoutineCycles.PROFILE);
+    }
     this.fileBaseName = "";
     this.logicalCounter = 0;
     this.callCounter = 0;
-    writeInit();
+    if (bootstrap) {
+      writeInit();
+    }
   } 
 
   /**
-   * Sets the current file name to the given file name.
+   * Sets the current file name to the given file name, and restarts
+   * the numbering of generated labels for the new file.
    *
    * @param givenFileName the name of the current file
+   * @throws IOException if a held back comparison cannot be written
    */
-  public void setCurrentFileName(String givenFileName) {
+  public void setCurrentFileName(String givenFileName) throws IOException {
+    writePendingComparison();
+    writePendingCall();
+    spillTop();
     fileBaseName = givenFileName;
+    functionName = null;
+    logicalCounter = 0;
+    callCounter = 0;
+  }
+
+  /**
+   * Writes assembly code that was already translated by another {@code CodeWriter}.
+   *
+   * @param code the translated code, ending with a newline
+   * @param codeStatistics the counts of the other {@code CodeWriter}
+   * @throws IOException if the code cannot be written
+   */
+  public void writeTranslated(CharSequence code, CodeStatistics codeStatistics) throws IOException {
+    writePendingComparison();
+    writePendingCall();
+    spillTop();
+    flush();
+    sink.write(code);
+    statistics.add(codeStatistics);
+  }
+
+  /**
+   * Returns the counts of the code written so far.
+   *
+   * @return the counts
+   */
+  public CodeStatistics statistics() {
+    return statistics;
   }
 
   /**
@@ -44,6 +207,7 @@ public class CodeWriter {
    * @throws IOException if the assembly code cannot be written
    */
   public void writeInit() throws IOException {
+    beginRegion("(bootstrap)", "bootstrap");
     // Sets the stack pointer to 256
     writeLine("// Bootstrap");
     writeLine("@256");
@@ -52,7 +216,25 @@ public class CodeWriter {
     writeLine("M=D");
     writeLine("");
     writeLine("// Call Sys.init");
-    writeCall(Mapping.getCommand(new String[]{"call", "Sys.init", "0"}));
+    writeCall(Mapping.getCommand(Opcode.CALL, null, "Sys.init", 0));
+
+    if (sharedRuntime) {
+      int start = statistics.instructions;
+      writeCallRoutine();
+      writeReturnRoutine();
+      writeComparisonRoutine("EQ", "JEQ");
+      writeComparisonRoutine("GT", "JGT");
+      writeComparisonRoutine("LT", "JLT");
+      writeLine("(" + COMPARISON_END + ")");
+      writeLine("@R13");     // Jump back to the return address saved by the comparison routine
+      writeLine("A=M");
+      writeLine("0;JMP");
+      writeLine("");
+      statistics.routineWords += statistics.instructions - start;
+    }
+    if (tailCalls) {
+      writeTailCallRoutine();
+    }
   }
 
   /**
@@ -68,33 +250,333 @@ public class CodeWriter {
       return;
     } else {
       try {
-        writeLine("// " + command.getOriginalLine()); // Write VM code line as a comment
-        command.writeCommand(this);
+        if (tailCalls && holdBackCall(command)) {
+          return;
+        }
+        if (fuseBranches && holdBack(command)) {
+          return;
+        }
+        writeCommented(command);
       } catch (Exception e) {
         System.out.println("Error writing command to file: " + e);
       }
     }
   }
 
+  // Writes a command under a comment containing the original line of VM code
+  private void writeCommented(CommandType command) throws IOException {
+    beginRegion(command, command.opcode().mnemonic());
+    writeComment(command);
+    command.writeCommand(this);
+  }
+
+  // Writes the original line of VM code as a comment, straight into the buffer, unless writing lean code
+  private void writeComment(CommandType command) throws IOException {
+    if (lean) {
+      return;
+    }
+    buffer.append("// ");
+    command.appendOriginalLine(buffer);
+    buffer.append('\n');
+    if (buffer.length() >= FLUSH_THRESHOLD) {
+      flush();
+    }
+  }
+
+  /**
+   * Holds back comparisons, and a not following a comparison, until the next
+   * command shows whether they can be fused with an if-goto.
+   *
+   * @param command the command to write
+   * @return true if the command has been held back or written, false if it still needs writing
+   * @throws IOException if the assembly code cannot be written
+   */
+  private boolean holdBack(CommandType command) throws IOException {
+    Opcode opcode = command.opcode();
+    if (pendingComparison != null) {
+      if (opcode == Opcode.IF_GOTO) {
+        writeFusedBranch(command);
+        return true;
+      }
+      if (opcode == Opcode.NOT && pendingNot == null) {
+        pendingNot = command;
+        return true;
+      }
+      writePendingComparison();
+    }
+    if (opcode.isComparison()) {
+      pendingComparison = command;
+      return true;
+    }
+    return false;
+  }
+
+  // Writes the held back comparison and not, if any, as they would have been written unfused
+  private void writePendingComparison() throws IOException {
+    if (pendingComparison == null) {
+      return;
+    }
+    CommandType comparison = pendingComparison;
+    CommandType not = pendingNot;
+    pendingComparison = null;
+    pendingNot = null;
+    writeCommented(comparison);
+    if (not != null) {
+      writeCommented(not);
+    }
+  }
+
+  /**
+   * Holds back a call until the next command shows whether it is a tail call.
+   *
+   * @param command the command to write
+   * @return true if the command has been held back or written, false if it still needs writing
+   * @throws IOException if the assembly code cannot be written
+   */
+  private boolean holdBackCall(CommandType command) throws IOException {
+    Opcode opcode = command.opcode();
+    if (pendingCall != null) {
+      if (opcode == Opcode.RETURN) {
+        writeTailCall(command);
+        return true;
+      }
+      writePendingCall();
+    }
+    if (opcode == Opcode.CALL) {
+      writePendingComparison();
+      pendingCall = command;
+      return true;
+    }
+    return false;
+  }
+
+  // Writes the held back call, if any, as it would have been written without tail calls
+  private void writePendingCall() throws IOException {
+    if (pendingCall == null) {
+      return;
+    }
+    CommandType call = pendingCall;
+    pendingCall = null;
+    writeCommented(call);
+  }
+
+  /**
+   * Writes the held back comparison, the not if any, and the given if-goto as a
+   * single conditional jump on x - y, leaving nothing on the stack.
+   *
+   * @param command the if-goto command
+   * @throws IOException if the assembly code cannot be written
+   */
+  private void writeFusedBranch(CommandType command) throws IOException {
+    Opcode comparison = pendingComparison.opcode();
+    boolean negated = pendingNot != null;
+    beginRegion(pendingComparison, comparison.mnemonic() + (negated ? "+not+" : "+") + command.opcode().mnemonic());
+    writeComment(pendingComparison);
+    if (negated) {
+      writeComment(pendingNot);
+    }
+    writeComment(command);
+    pendingComparison = null;
+    pendingNot = null;
+
+    if (!Mapping.isValidLabel(command.arg1())) {
+      throw new IllegalArgumentException("Label contains illegal characters: " + command.arg1());
+    }
+
+    String jump;
+    switch (comparison) {
+      case EQ:
+        jump = negated ? "JNE" : "JEQ";
+        break;
+      case GT:
+        jump = negated ? "JLE" : "JGT";
+        break;
+      default:
+        jump = negated ? "JGE" : "JLT";
+        break;
+    }
+    if (!topInD) {
+      writeLine("@SP");
+      writeLine("AM=M-1");   // Pop y to D
+      writeLine("D=M");
+    }
+    topInD = false;
+    writeLine("@SP");
+    writeLine("AM=M-1");   // Pop x and subtract y from it
+    writeLine("D=M-D");
+    writeAddress(command.arg1());
+    writeLine("D;" + jump);  // Jump if the comparison holds
+    writeLine("");
+  }
+
   /**
-   * Closes the output file.
+   * Writes any buffered code to the sink, then closes the sink.
    *
-   * @throws IOException if the file cannot be closed
+   * @throws IOException if the code cannot be written or the sink cannot be closed
    */
   public void close() throws IOException {
-    writer.close();
+    try {
+      writePendingComparison();
+      writePendingCall();
+      spillTop();
+      flush();
+      if (profile != null) {
+        profile.end();
+      }
+    } finally {
+      sink.close();
+    }
   }
 
   /**
    * Helper function to reduce visual clutter in each write method
-   * by moving the call to {@code FileWriter} and the newline character
-   * to a separate method.
+   * by moving the buffering and the newline character to a separate method.
+   *
+   * <p>Comments and blank lines are dropped when writing lean code.
    *
    * @param line the line to write to the output file
-   * @throws IOException if the line cannot be written
+   * @throws IOException if the buffered code cannot be written
    */
   private void writeLine(String line) throws IOException {
-    writer.write(line + "\n");
+    if (lean && (line.isEmpty() || line.startsWith("//"))) {
+      return;
+    }
+    buffer.append(line).append('\n');
+    if (!line.isEmpty() && line.charAt(0) != '(' && !line.startsWith("//")) {
+      statistics.instructions++;   // Every line but labels, comments and blank lines takes a ROM word
+    }
+    if (buffer.length() >= FLUSH_THRESHOLD) {
+      flush();
+    }
+  }
+
+  /**
+   * Writes an A-instruction for the given symbol, appending it to the buffer
+   * without building the line as a String first.
+   *
+   * @param symbol the label, variable or predefined symbol
+   * @throws IOException if the buffered code cannot be written
+   */
+  private void writeAddress(String symbol) throws IOException {
+    buffer.append('@').append(symbol).append('\n');
+    countInstruction();
+  }
+
+  /**
+   * Writes an A-instruction for the given number, appending it to the buffer
+   * without building the line as a String first.
+   *
+   * @param value the number
+   * @throws IOException if the buffered code cannot be written
+   */
+  private void writeAddress(int value) throws IOException {
+    buffer.append('@').append(value).append('\n');
+    countInstruction();
+  }
+
+  /**
+   * Writes an A-instruction for the fixed address of a pointer, temp or static variable.
+   *
+   * @param segment the segment, one of pointer, temp or static
+   * @param index the index in the segment
+   * @throws IOException if the buffered code cannot be written
+   */
+  private void writeFixedAddress(Segment segment, int index) throws IOException {
+    if (segment == Segment.STATIC) {
+      buffer.append('@').append(fileBaseName).append('.').append(index).append('\n');
+      countInstruction();
+    } else if (segment == Segment.TEMP) {
+      writeAddress(5 + index);
+    } else {
+      writeAddress(Mapping.accessMemory(segment, index, fileBaseName));
+    }
+  }
+
+  // Counts an instruction appended directly to the buffer, passing the buffer on once it is full
+  private void countInstruction() throws IOException {
+    statistics.instructions++;
+    if (buffer.length() >= FLUSH_THRESHOLD) {
+      flush();
+    }
+  }
+
+  // Returns a generated label, scoped by the current file name outside of the bootstrap code
+  private String scopedLabel(String name, int counter) {
+    if (fileBaseName.isEmpty()) {
+      return name + counter;
+    }
+    return fileBaseName + "$" + name + counter;
+  }
+
+  /**
+   * Stores the top of the stack from D to the stack, if it is held in D.
+   *
+   * @throws IOException if the assembly code cannot be written
+   */
+  private void spillTop() throws IOException {
+    if (topInD) {
+      topInD = false;
+      writeLine("@SP");
+      writeLine("M=M+1");
+      writeLine("A=M-1");
+      writeLine("M=D");    // Store the cached top of the stack
+    }
+  }
+
+  /**
+   * Makes sure the top of the stack is held in D, popping it from the stack if needed.
+   *
+   * @throws IOException if the assembly code cannot be written
+   */
+  private void popTopToD() throws IOException {
+    if (!topInD) {
+      writeLine("@SP");
+      writeLine("AM=M-1");
+      writeLine("D=M");
+    }
+    topInD = true;
+  }
+
+  /**
+   * Starts a new profiled region for the code of a command, if profiling.
+   *
+   * @param command the command, or the first of the commands written together
+   * @param kind the kind of the region
+   */
+  private void beginRegion(CommandType command, String kind) {
+    if (profile == null) {
+      return;
+    }
+    if (command.opcode() == Opcode.FUNCTION) {
+      functionName = command.arg1();
+    }
+    beginRegion(functionName != null ? functionName : fileBaseName + " (outside functions)", kind);
+  }
+
+  // Hands the code of the current region to the profile, and starts a new region, if profiling
+  private void beginRegion(String function, String kind) {
+    if (profile == null) {
+      return;
+    }
+    profile.append(buffer, profileStart, buffer.length());
+    profileStart = buffer.length();
+    profile.begin(function, kind);
+  }
+
+  // Passes the buffered code to the sink and empties the buffer
+  private void flush() throws IOException {
+    if (profile != null) {
+      profile.append(buffer, profileStart, buffer.length());
+      profileStart = 0;
+    }
+    if (buffer.length() > 0) {
+      try {
+        sink.write(buffer);
+      } finally {
+        // Never hand a failing sink the same code again with the next flush
+        buffer.setLength(0);
+      }
+    }
   }
 
   /**
@@ -118,55 +600,149 @@ public class CodeWriter {
   }
 
   /**
-   * Writes the assembly code to load the address of the given command to D.
+   * Writes the assembly code to load the value of the given push command to D.
+   *
+   * <p>Constants and the fixed addresses of pointer, temp and static are read
+   * directly. The other segments are read through their base pointer, adding the
+   * index with {@code A=M+1} steps when it is small.
    *
-   * @param command the command to get the stack address for
-   * @return the stack address as a string
+   * @param command the push command
+   * @throws IOException if the assembly code cannot be written
    */
-  private void loadAddressToD(CommandType command) throws IOException {
-    // Set of segments that require dynamic memory allocation
-    Set<String> dynamicSegments = Set.of("local", "argument", "this", "that");
-    Set<String> staticSegments = Set.of("pointer", "temp", "static");
+  private void loadValueToD(CommandType command) throws IOException {
+    Segment segment = command.segment();
+    int index = command.index();
 
-    // Set the value of a constant to D directly
-    if (command.arg1().equals("constant")) {
-      writeLine("@" + command.arg2());
-      writeLine("D=A");
-    } else if (dynamicSegments.contains(command.arg1())) {
-      // Save the base address to R13
-      writeLine("@" + Mapping.accessMemory(command.arg1(), command.arg2(), fileBaseName));
-      writeLine("D=M");
-      writeLine("@R13");
-      writeLine("M=D");
-      // Save the index to D
-      writeLine("@" + command.arg2());
-      writeLine("D=A");
-      // Add the index to the base address saved in R13
-      writeLine("@R13");
-      writeLine("D=D+M");
-    } else if (staticSegments.contains(command.arg1())) {
-      // Otherwise simply load the value of the segment[base + index] to D
-      writeLine("@" + Mapping.accessMemory(command.arg1(), command.arg2(), fileBaseName));
-      writeLine("D=A");
+    switch (segment) {
+      case CONSTANT:
+        if (index == 0 || index == 1) {
+          writeLine("D=" + index);
+        } else {
+          writeAddress(index);
+          writeLine("D=A");
+        }
+        break;
+      case POINTER:
+      case TEMP:
+      case STATIC:
+        writeFixedAddress(segment, index);
+        writeLine("D=M");
+        break;
+      default:
+        String address = Mapping.accessMemory(segment, index, fileBaseName);
+        if (index <= 2) {
+          writeBaseIndexToA(address, index);
+        } else {
+          writeAddress(index);
+          writeLine("D=A");
+          writeAddress(address);
+          writeLine("A=D+M");  // Go to the base address plus the index
+        }
+        writeLine("D=M");
+        break;
+    }
+  }
+
+  /**
+   * Writes the assembly code to store D to the target of the given pop command.
+   *
+   * <p>The fixed addresses of pointer, temp and static are written directly. The other
+   * segments are written through their base pointer with {@code A=M+1} steps when the
+   * index is small, otherwise through R13 and R14.
+   *
+   * @param command the pop command
+   * @throws IOException if the assembly code cannot be written
+   */
+  private void storeD(CommandType command) throws IOException {
+    Segment segment = command.segment();
+    int index = command.index();
+    switch (segment) {
+      case POINTER:
+      case TEMP:
+      case STATIC:
+        writeFixedAddress(segment, index);
+        writeLine("M=D");
+        break;
+      default:
+        String address = Mapping.accessMemory(segment, index, fileBaseName);
+        if (index <= MAX_STEPPED_INDEX) {
+          writeBaseIndexToA(address, index);
+          writeLine("M=D");
+        } else {
+          writeLine("@R13");
+          writeLine("M=D");    // Save the value to R13
+          writeAddress(index);
+          writeLine("D=A");
+          writeAddress(address);
+          writeLine("D=D+M");  // Add the index to the base address
+          writeLine("@R14");
+          writeLine("M=D");    // Save the target address to R14
+          writeLine("@R13");
+          writeLine("D=M");
+          writeLine("@R14");
+          writeLine("A=M");
+          writeLine("M=D");    // Save the value to the target address
+        }
+        break;
+    }
+  }
+
+  /**
+   * Writes the assembly code to go to the base address plus a small index, without using D.
+   *
+   * @param base the pointer holding the base address
+   * @param index the index
+   * @throws IOException if the assembly code cannot be written
+   */
+  private void writeBaseIndexToA(String base, int index) throws IOException {
+    writeAddress(base);
+    if (index == 0) {
+      writeLine("A=M");
+      return;
+    }
+    writeLine("A=M+1");
+    for (int i = 1; i < index; i++) {
+      writeLine("A=A+1");
     }
   }
 
+  /**
+   * Writes the assembly code to push D to the stack.
+   *
+   * @throws IOException if the assembly code cannot be written
+   */
+  private void pushD() throws IOException {
+    writeLine("@SP");
+    writeLine("M=M+1");
+    writeLine("A=M-1");
+    writeLine("M=D");  // Push D to stack
+  }
+
   /**
    * Writes the assembly code for the given arithmetic command.
    *
    * @param command the arithmetic command
    */
   public void writeArithmetic(CommandType command) throws IOException {
-    String arithmeticType = command.typeCommand();
+    Opcode arithmeticType = command.opcode();
+
+    if (sharedRuntime && arithmeticType.isComparison()) {
+      writeSharedComparison(arithmeticType);
+      return;
+    }
+    if (stackCache) {
+      writeCachedArithmetic(arithmeticType);
+      return;
+    }
 
     // Only pop off a single item for unary functions
     // Go to the item at the top of the stack
     decrementStack();
     writeLine("A=M");
 
-    if (arithmeticType.equals("neg")) {
+    if (arithmeticType == Opcode.NEG) {
       writeLine("M=-M");
-    } else if (arithmeticType.equals("not")) {
+    } else if (arithmeticType == Opcode.NOT) {
       writeLine("M=!M");
     } else {
 
@@ -177,29 +753,29 @@ public class CodeWriter {
 
       // Perform binary functions
       switch (arithmeticType) {
-        case "add":
+        case ADD:
           writeLine("M=D+M");   // Add y to x
           break;
-        case "sub":
+        case SUB:
           writeLine("M=D-M");   // Subtract x from y
           writeLine("M=-M");          // Negate the result
           break;
-        case "eq":
+        case EQ:
           // Check if x == y and push the result to the top of the stack
           writeBoolean("JEQ", "JNE");
           break;          
-        case "gt":
+        case GT:
           // Check if x > y and push the result to the top of the stack
           writeBoolean("JGT", "JLE");
           break;
-        case "lt":
+        case LT:
           // Check if x < y and push the result to the top of the stack
           writeBoolean("JLT", "JGE");
           break;
-        case "and":
+        case AND:
           writeLine("M=D&M");   // Bitwise AND x and y
           break;
-        case "or":
+        case OR:
           writeLine("M=D|M");   // Bitwise OR x and y
           break;
         default:
@@ -211,6 +787,72 @@ public class CodeWriter {
     writeLine("");  // Empty line following command
   }
 
+  /**
+   * Writes the assembly code for the given arithmetic command, taking y from D
+   * if it is held there, and leaving the result in D.
+   *
+   * @param arithmeticType the arithmetic command
+   * @throws IOException if the assembly code cannot be written
+   */
+  private void writeCachedArithmetic(Opcode arithmeticType) throws IOException {
+    popTopToD();
+    if (arithmeticType == Opcode.NEG) {
+      writeLine("D=-D");
+    } else if (arithmeticType == Opcode.NOT) {
+      writeLine("D=!D");
+    } else {
+      writeLine("@SP");
+      writeLine("AM=M-1");   // Pop x, leaving y in D
+      switch (arithmeticType) {
+        case ADD:
+          writeLine("D=D+M");
+          break;
+        case SUB:
+          writeLine("D=M-D");
+          break;
+        case AND:
+          writeLine("D=D&M");
+          break;
+        case OR:
+          writeLine("D=D|M");
+          break;
+        case EQ:
+          writeCachedBoolean("JEQ");
+          break;
+        case GT:
+          writeCachedBoolean("JGT");
+          break;
+        case LT:
+          writeCachedBoolean("JLT");
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown arithmetic command: " + arithmeticType.mnemonic());
+      }
+    }
+    writeLine("");
+  }
+
+  /**
+   * Writes the assembly code to compare x in M with y in D, leaving true or false in D.
+   *
+   * @param comparisonTrue the jump condition for true
+   * @throws IOException if the assembly code cannot be written
+   */
+  private void writeCachedBoolean(String comparisonTrue) throws IOException {
+    String trueLabel = scopedLabel("TRUE_", logicalCounter);
+    String endLabel = scopedLabel("LOGICAL_END_", logicalCounter);
+    logicalCounter++;
+    writeLine("D=M-D");    // Subtract y from x
+    writeAddress(trueLabel);
+    writeLine("D;" + comparisonTrue);
+    writeLine("D=0");      // Set D to false
+    writeAddress(endLabel);
+    writeLine("0;JMP");
+    writeLine("(" + trueLabel + ")");
+    writeLine("D=-1");     // Set D to true
+    writeLine("(" + endLabel + ")");
+  }
+
   /**
    * Writes the assembly code for the given boolean comparison.
    *
@@ -228,45 +870,61 @@ public class CodeWriter {
    * Sets and then jumps to true or false labels based on the result of the comparison,
    * then pushes the result to the stack.
    *
-   * <p>Each true and false label is followed by the current logical counter value.
+   * <p>Each true and false label is followed by the current logical counter value,
+   * and scoped by the current file name.
    *
    * @param comparisonTrue the jump condition for true
    * @param comparisonFalse the jump condition for false
    * @throws IOException if the assembly code cannot be written
    */
   private void checkTrueFalse(String comparisonTrue, String comparisonFalse) throws IOException {
-    writeLine("@TRUE_" + logicalCounter); 
+    String trueLabel = scopedLabel("TRUE_", logicalCounter);
+    String falseLabel = scopedLabel("FALSE_", logicalCounter);
+    String endLabel = scopedLabel("LOGICAL_END_", logicalCounter);
+    writeAddress(trueLabel); 
     writeLine("D;" + comparisonTrue);             // Jump to true if the comparison is true
-    writeLine("@FALSE_" + logicalCounter);
+    writeAddress(falseLabel);
     writeLine("D;" + comparisonFalse);            // Jump to false if the comparison is false
-    writeLine("\n(TRUE_" + logicalCounter + ")");
+    writeLine("");
+    writeLine("(" + trueLabel + ")");
     writeLine("D=-1");                       // Set D to true
-    writeLine("@LOGICAL_END_" + logicalCounter);  // Jump to the end of the logical function
+    writeAddress(endLabel);  // Jump to the end of the logical function
     writeLine("0;JMP");
-    writeLine("\n(FALSE_" + logicalCounter + ")");
+    writeLine("");
+    writeLine("(" + falseLabel + ")");
     writeLine("D=0");                        // Set D to false
-    writeLine("@LOGICAL_END_" + logicalCounter);  // Jump to the end of the logical function
-    writeLine("\n(LOGICAL_END_" + logicalCounter + ")");
+    writeAddress(endLabel);  // Jump to the end of the logical function
+    writeLine("");
+    writeLine("(" + endLabel + ")");
     writeLine("@SP");
     writeLine("A=M");
     writeLine("M=D");                        // Push the result to the stack
   }
 
   /**
-   * Writes the assembly code for the given push or pop command.
+   * Writes the assembly code for the given push command.
    *
-   * @param command the push or pop command
+   * @param command the push command
    */
   public void writePush(CommandType command) throws IOException {
-    loadAddressToD(command);
-    if (!command.arg1().equals("constant")) {
-      writeLine("A=D");  // Go to the target address
-      writeLine("D=M");  // Save the value to D
+    if (stackCache) {
+      // Keep the pushed value in D, storing the previous top of the stack first
+      spillTop();
+      loadValueToD(command);
+      topInD = true;
+      writeLine("");
+      return;
+    }
+    if (command.segment() == Segment.CONSTANT && command.index() <= 1) {
+      // Write 0 or 1 to the stack without going through D
+      writeLine("@SP");
+      writeLine("M=M+1");
+      writeLine("A=M-1");
+      writeLine("M=" + command.index());
+    } else {
+      loadValueToD(command);
+      pushD();
     }
-    writeLine("@SP");  // Go to *SP
-    writeLine("A=M");
-    writeLine("M=D");  // Push D to stack
-    incrementStack();
     writeLine("");     // Empty line following command
   }
 
@@ -276,18 +934,45 @@ public class CodeWriter {
    * @param command the pop command
    */
   public void writePop(CommandType command) throws IOException {
-    loadAddressToD(command);  // Load the target address to D
-    writeLine("@R14");   
-    writeLine("M=D");    // Save the target address to R14
-    decrementStack();         // Decrement the stack pointer
-    writeLine("A=M");    // Go to the top of the stack
-    writeLine("D=M");    // Save the value to D
-    writeLine("@R14");
-    writeLine("A=M");    // Go to the target address
-    writeLine("M=D");    // Save the value to the target address
+    if (command.segment() == Segment.CONSTANT) {
+      throw new IllegalArgumentException("Cannot pop to the constant segment");
+    }
+    if (stackCache || !isSegmentPointer(command.segment()) || command.index() <= MAX_STEPPED_INDEX) {
+      popTopToD();
+      topInD = false;
+      storeD(command);
+    } else {
+      // Work out the target address before popping, so the value does not need saving
+      writeAddress(command.index());
+      writeLine("D=A");
+      writeAddress(Mapping.accessMemory(command.segment(), command.index(), fileBaseName));
+      writeLine("D=D+M");
+      writeLine("@R13");
+      writeLine("M=D");    // Save the target address to R13
+      writeLine("@SP");
+      writeLine("AM=M-1");
+      writeLine("D=M");    // Pop the value to D
+      writeLine("@R13");
+      writeLine("A=M");
+      writeLine("M=D");    // Save the value to the target address
+    }
     writeLine("");       // Empty line following command
   }
 
+  // Returns whether the segment is addressed through a base pointer: local, argument, this or that
+  private static boolean isSegmentPointer(Segment segment) {
+    switch (segment) {
+      case LOCAL:
+      case ARGUMENT:
+      case THIS:
+      case THAT:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+
   /**
    * Writes the assembly code for the given label command.
    *
@@ -297,6 +982,7 @@ public class CodeWriter {
    * @param command the label command
    */
   public void writeLabel(CommandType command) throws IOException {
+    spillTop();
     if (Mapping.isValidLabel(command.arg1())) {
       writeLine("(" + command.arg1() + ")");
     } else {
@@ -312,7 +998,8 @@ public class CodeWriter {
    * @param command the goto command
    */
   public void writeGoto(CommandType command) throws IOException {
-    writeLine("@" + command.arg1());
+    spillTop();
+    writeAddress(command.arg1());
     writeLine("0;JMP");
     writeLine("");
   }
@@ -325,10 +1012,14 @@ public class CodeWriter {
   public void writeIf(CommandType command) throws IOException {
     // Label contains only valid characters
     if (Mapping.isValidLabel(command.arg1())) {
-      decrementStack();         // Decrement the stack pointer
-      writeLine("A=M");    // Go to value at the top of the stack
-      writeLine("D=M");    // Save the value to D
-      writeLine("@" + command.arg1());
+      if (topInD) {
+        topInD = false;         // The value is already in D
+      } else {
+        decrementStack();         // Decrement the stack pointer
+        writeLine("A=M");    // Go to value at the top of the stack
+        writeLine("D=M");    // Save the value to D
+      }
+      writeAddress(command.arg1());
       writeLine("D;JNE");  // Jump if the value is not equal to zero
     } else {
       throw new IllegalArgumentException("Label contains illegal characters: " + command.arg1());
@@ -342,10 +1033,10 @@ public class CodeWriter {
    * @param command the function command
    */
   public void writeFunction(CommandType command) throws IOException {
-    writeLabel(Mapping.getCommand(new String[]{"label", command.arg1()}));
-    for (int i = 0; i < Integer.parseInt(command.arg2()); i++) {
+    writeLabel(Mapping.getCommand(Opcode.LABEL, null, command.arg1(), 0));
+    for (int i = 0; i < command.index(); i++) {
       // Initialize 0s for local variables
-      writePush(Mapping.getCommand(new String[]{"push", "constant", "0"}));
+      writePush(PUSH_ZERO);
     }
     writeLine("");
   }
@@ -356,6 +1047,26 @@ public class CodeWriter {
    * @param command the call command
    */
   public void writeReturn(CommandType command) throws IOException {
+    if (sharedRuntime) {
+      spillTop();    // The shared subroutine pops the return value from the stack
+      int start = startSharedSite(InlineWords.RETURN);
+      writeAddress(RETURN_ROUTINE);
+      writeLine("0;JMP");
+      writeLine("");
+      endSharedSite(start);
+      return;
+    }
+
+    // A return value cached in D is kept in R13 while D works out the frame, instead of
+    // being stored to the stack and popped straight back. It cannot go to *ARG yet, which
+    // holds the return address when there are no arguments.
+    boolean returnValueInD = topInD;
+    topInD = false;
+    if (returnValueInD) {
+      writeLine("@R13");
+      writeLine("M=D");
+    }
+
     writeLine("@LCL");  // Save LCL to D
     writeLine("D=M");
     writeLine("@10");    // Store endFrame in temp 5
@@ -368,7 +1079,15 @@ public class CodeWriter {
     writeLine("M=D");
 
     // Pop the top value of the stack and place it in ARG
-    writePop(Mapping.getCommand(new String[]{"pop", "argument", "0"}));
+    if (returnValueInD) {
+      writeLine("@R13");
+      writeLine("D=M");
+      writeLine("@ARG");
+      writeLine("A=M");
+      writeLine("M=D");
+    } else {
+      writePop(POP_RETURN_VALUE);
+    }
 
     // Set SP to ARG + 1
     writeLine("@ARG");
@@ -393,11 +1112,32 @@ public class CodeWriter {
    * @param command the return command
    */
   public void writeCall(CommandType command) throws IOException {
+    spillTop();
     // Create the return address
     callCounter++;
-    String returnAddress = command.arg1() + "$ret" + callCounter;
+    String returnAddress = scopedLabel(command.arg1() + "$ret", callCounter);
+
+    if (sharedRuntime) {
+      int start = startSharedSite(InlineWords.CALL);
+      writeAddress(command.index());
+      writeLine("D=A");
+      writeLine("@R13");     // Save the number of arguments to R13
+      writeLine("M=D");
+      writeAddress(command.arg1());
+      writeLine("D=A");
+      writeLine("@R14");     // Save the function address to R14
+      writeLine("M=D");
+      writeAddress(returnAddress);
+      writeLine("D=A");      // Pass the return address in D
+      writeAddress(CALL_ROUTINE);
+      writeLine("0;JMP");
+      writeLine("(" + returnAddress + ")");
+      writeLine("");
+      endSharedSite(start);
+      return;
+    }
     // Push the return address
-    writeLine("@" + returnAddress);
+    writeAddress(returnAddress);
     writeLine("D=A");
     writeLine("@SP");
     writeLine("A=M");
@@ -412,7 +1152,7 @@ public class CodeWriter {
     // Move the stack pointer back 5 + nArgs positions
     writeLine("@SP");
     writeLine("D=M");
-    writeLine("@" + (5 + Integer.parseInt(command.arg2())));
+    writeAddress(5 + command.index());
     writeLine("D=D-A");
     writeLine("@ARG");
     writeLine("M=D");
@@ -424,7 +1164,7 @@ public class CodeWriter {
     writeLine("M=D");
 
     // Goto functionName
-    writeGoto(Mapping.getCommand(new String[]{"goto", command.arg1()}));
+    writeGoto(Mapping.getCommand(Opcode.GOTO, null, command.arg1(), 0));
 
     // Write the return label
     writeLine("(" + returnAddress + ")");
@@ -432,6 +1172,102 @@ public class CodeWriter {
     writeLine("");
   }
 
+  /**
+   * Writes the held back call and the given return as a jump to the called function
+   * that reuses the frame of the current function.
+   *
+   * <p>The arguments are moved down onto ARG, where the return value of the current
+   * function belongs. If the current function has at least as many arguments, its
+   * saved frame is left in place below LCL and the gap above the moved arguments is
+   * unused until the return. Otherwise the shared tail call subroutine moves the saved
+   * frame along with the arguments, so only the check, the unrolled move of the
+   * arguments and the jumps are written at each site.
+   *
+   * @param command the return command
+   * @throws IOException if the assembly code cannot be written
+   */
+  private void writeTailCall(CommandType command) throws IOException {
+    CommandType call = pendingCall;
+    pendingCall = null;
+    beginRegion(call, call.opcode().mnemonic() + "+" + command.opcode().mnemonic());
+    writeComment(call);
+    writeComment(command);
+    spillTop();
+    int argumentCount = call.index();
+    callCounter++;
+    String movedFrame = scopedLabel(call.arg1() + "$tail", callCounter);
+
+    // Check whether the arguments fit below the saved frame: LCL - 5 - ARG >= nArgs,
+    // which always holds without arguments
+    if (argumentCount > 0) {
+      writeLine("@LCL");
+      writeLine("D=M");
+      writeLine("@5");
+      writeLine("D=D-A");
+      writeLine("@ARG");
+      writeLine("D=D-M");
+      writeAddress(argumentCount);
+      writeLine("D=D-A");
+      writeAddress(movedFrame);
+      writeLine("D;JLT");
+    }
+
+    // Move the arguments down onto ARG, leaving the saved frame below LCL
+    writeArgumentMove(argumentCount);
+    writeLine("@LCL");   // The called function's locals start at LCL, as after a call
+    writeLine("D=M");
+    writeLine("@SP");
+    writeLine("M=D");
+    writeAddress(call.arg1());
+    writeLine("0;JMP");
+
+    // Otherwise pass the address below the first argument and the function to the subroutine
+    if (argumentCount > 0) {
+      writeLine("(" + movedFrame + ")");
+      writeLine("@SP");
+      writeLine("D=M");
+      writeAddress(argumentCount + 1);
+      writeLine("D=D-A");
+      writeLine("@R13");
+      writeLine("M=D");
+      writeAddress(call.arg1());
+      writeLine("D=A");
+      writeAddress(TAIL_CALL_ROUTINE);
+      writeLine("0;JMP");
+    }
+    writeLine("");
+  }
+
+  // Copies the arguments on top of the stack down to ARG, lowest first
+  private void writeArgumentMove(int argumentCount) throws IOException {
+    if (argumentCount == 0) {
+      return;
+    }
+    writeLine("@SP");
+    writeLine("D=M");
+    writeAddress(argumentCount + 1);
+    writeLine("D=D-A");
+    writeLine("@R13");
+    writeLine("M=D");
+    writeLine("@ARG");
+    writeLine("D=M-1");
+    writeLine("@R14");
+    writeLine("M=D");
+    writeWordCopies(argumentCount);
+  }
+
+  // Copies words from the address after R13 to the address after R14, advancing both
+  private void writeWordCopies(int count) throws IOException {
+    for (int i = 0; i < count; i++) {
+      writeLine("@R13");
+      writeLine("AM=M+1");
+      writeLine("D=M");
+      writeLine("@R14");
+      writeLine("AM=M+1");
+      writeLine("M=D");
+    }
+  }
+
   private void pushAllPointers() throws IOException {
     enum Pointers {
       LCL, ARG, THIS, THAT
@@ -439,7 +1275,7 @@ public class CodeWriter {
 
     for (Pointers pointer : Pointers.values()) {
       writeLine("// Push " + pointer);
-      writeLine("@" + pointer);
+      writeAddress(pointer.name());
       writeLine("D=M");
       writeLine("@SP");  // Go to *SP
       writeLine("A=M");
@@ -461,8 +1297,267 @@ public class CodeWriter {
       writeLine("M=M-1");
       writeLine("A=M");
       writeLine("D=M");
-      writeLine("@" + pointer);
+      writeAddress(pointer.name());
       writeLine("M=D");
     }
   }
-}
\ No newline at end of file
+
+  /**
+   * Writes a comparison as a jump to its shared subroutine, which leaves the
+   * result on the stack and jumps back to the address passed in D.
+   *
+   * @param arithmeticType the comparison, one of eq, gt or lt
+   * @throws IOException if the assembly code cannot be written
+   */
+  private void writeSharedComparison(Opcode arithmeticType) throws IOException {
+    spillTop();
+    int start = startSharedSite(InlineWords.COMPARISON);
+    String returnAddress = scopedLabel("LOGICAL_END_", logicalCounter);
+    logicalCounter++;
+    writeAddress(returnAddress);
+    writeLine("D=A");      // Pass the return address in D
+    writeAddress(COMPARISON_ROUTINE + arithmeticType.name());
+    writeLine("0;JMP");
+    writeLine("(" + returnAddress + ")");
+    writeLine("");
+    endSharedSite(start);
+  }
+
+  /**
+   * Writes the shared call subroutine, which expects the return address in D,
+   * the number of arguments in R13 and the function address in R14.
+   *
+   * @throws IOException if the assembly code cannot be written
+   */
+  private void writeCallRoutine() throws IOException {
+    writeLine("// Shared call");
+    writeLine("(" + CALL_ROUTINE + ")");
+    writeLine("@SP");      // Push the return address
+    writeLine("A=M");
+    writeLine("M=D");
+    incrementStack();
+    writeLine("");
+
+    // Push LCL, ARG, THIS, THAT
+    pushAllPointers();
+
+    // Move ARG back 5 + nArgs positions from the stack pointer
+    writeLine("@SP");
+    writeLine("D=M");
+    writeLine("@R13");
+    writeLine("D=D-M");
+    writeLine("@5");
+    writeLine("D=D-A");
+    writeLine("@ARG");
+    writeLine("M=D");
+
+    // Set LCL to SP
+    writeLine("@SP");
+    writeLine("D=M");
+    writeLine("@LCL");
+    writeLine("M=D");
+
+    // Goto the function address
+    writeLine("@R14");
+    writeLine("A=M");
+    writeLine("0;JMP");
+    writeLine("");
+  }
+
+  /**
+   * Writes the shared subroutine finishing a tail call whose arguments do not fit
+   * below the saved frame, which expects the address just below the first argument
+   * in R13 and the function address in D.
+   *
+   * <p>The saved frame is pushed above the arguments, then the arguments and the
+   * frame are moved down onto ARG together, lowest first, and the locals start
+   * just above the moved frame.
+   *
+   * @throws IOException if the assembly code cannot be written
+   */
+  private void writeTailCallRoutine() throws IOException {
+    writeLine("// Shared tail call");
+    writeLine("(" + TAIL_CALL_ROUTINE + ")");
+    writeLine("@R15");     // Keep the function address
+    writeLine("M=D");
+
+    // Push the saved frame, from LCL - 5 up to LCL - 1
+    writeLine("@LCL");
+    writeLine("D=M");
+    writeLine("@6");
+    writeLine("D=D-A");
+    writeLine("@R14");
+    writeLine("M=D");
+    for (int i = 0; i < 5; i++) {
+      writeLine("@R14");
+      writeLine("AM=M+1");
+      writeLine("D=M");
+      writeLine("@SP");
+      writeLine("AM=M+1");
+      writeLine("A=A-1");
+      writeLine("M=D");
+    }
+
+    // Copy the words from after R13 up to the top of the stack down to ARG
+    writeLine("@ARG");
+    writeLine("D=M-1");
+    writeLine("@R14");
+    writeLine("M=D");
+    writeLine("(" + TAIL_CALL_MOVE + ")");
+    writeLine("@R13");
+    writeLine("AM=M+1");
+    writeLine("D=M");
+    writeLine("@R14");
+    writeLine("AM=M+1");
+    writeLine("M=D");
+    writeLine("@SP");
+    writeLine("D=M-1");
+    writeLine("@R13");
+    writeLine("D=D-M");
+    writeAddress(TAIL_CALL_MOVE);
+    writeLine("D;JGT");
+
+    // Start the locals just above the moved frame, and go to the function
+    writeLine("@R14");
+    writeLine("D=M+1");
+    writeLine("@SP");
+    writeLine("M=D");
+    writeLine("@LCL");
+    writeLine("M=D");
+    writeLine("@R15");
+    writeLine("A=M");
+    writeLine("0;JMP");
+    writeLine("");
+  }
+
+  /**
+   * Writes the shared return subroutine, which keeps the end of the frame in R13
+   * and the return address in R14.
+   *
+   * @throws IOException if the assembly code cannot be written
+   */
+  private void writeReturnRoutine() throws IOException {
+    writeLine("// Shared return");
+    writeLine("(" + RETURN_ROUTINE + ")");
+    writeLine("@LCL");     // Save endFrame to R13
+    writeLine("D=M");
+    writeLine("@R13");
+    writeLine("M=D");
+    writeLine("@5");       // Save the return address at endFrame - 5 to R14
+    writeLine("A=D-A");
+    writeLine("D=M");
+    writeLine("@R14");
+    writeLine("M=D");
+
+    // Pop the return value to *ARG
+    writeLine("@SP");
+    writeLine("AM=M-1");
+    writeLine("D=M");
+    writeLine("@ARG");
+    writeLine("A=M");
+    writeLine("M=D");
+
+    // Set SP to ARG + 1
+    writeLine("@ARG");
+    writeLine("D=M+1");
+    writeLine("@SP");
+    writeLine("M=D");
+
+    // Restore THAT, THIS, ARG, LCL from the frame
+    for (String pointer : new String[]{"THAT", "THIS", "ARG", "LCL"}) {
+      writeLine("@R13");
+      writeLine("AM=M-1");
+      writeLine("D=M");
+      writeAddress(pointer);
+      writeLine("M=D");
+    }
+
+    // Jump to the return address
+    writeLine("@R14");
+    writeLine("A=M");
+    writeLine("0;JMP");
+    writeLine("");
+  }
+
+  /**
+   * Writes a shared comparison subroutine, which pops y and x, pushes the result of the
+   * comparison, and jumps back to the address passed in D.
+   *
+   * @param name the name of the comparison, in upper case
+   * @param comparisonTrue the jump condition for true
+   * @throws IOException if the assembly code cannot be written
+   */
+  private void writeComparisonRoutine(String name, String comparisonTrue) throws IOException {
+    writeLine("// Shared " + name.toLowerCase());
+    writeLine("(" + COMPARISON_ROUTINE + name + ")");
+    writeLine("@R13");     // Save the return address to R13
+    writeLine("M=D");
+    writeLine("@SP");      // Pop y to D, leaving SP pointing past x
+    writeLine("AM=M-1");
+    writeLine("D=M");
+    writeLine("A=A-1");    // Subtract y from x
+    writeLine("D=M-D");
+    writeLine("M=-1");     // Replace x with true
+    writeAddress(COMPARISON_END);
+    writeLine("D;" + comparisonTrue);  // Return if the comparison is true
+    writeLine("@SP");
+    writeLine("A=M-1");
+    writeLine("M=0");      // Otherwise replace x with false
+    writeAddress(COMPARISON_END);
+    writeLine("0;JMP");
+    writeLine("");
+  }
+
+  // Counts a shared site and the words it would have taken inline, returning the words written so far
+  private int startSharedSite(int inlineWords) {
+    statistics.sharedSites++;
+    statistics.inlineWords += inlineWords;
+    return statistics.instructions;
+  }
+
+  // Counts the words taken by a shared site that started when the given number of words were written
+  private void endSharedSite(int start) {
+    statistics.sharedWords += statistics.instructions - start;
+  }
+
+  /**
+   * The shared runtime subroutines, measured once by profiling a scratch
+   * {@code CodeWriter} that writes them.
+   */
+  private static final class RoutineCycles {
+    static final CodeProfile PROFILE = measure();
+
+    private static CodeProfile measure() {
+      try {
+        CodeWriter scratch = new CodeWriter(new MemorySink(),
+            EnumSet.of(Option.LEAN, Option.SHARED_RUNTIME, Option.TAIL_CALLS, Option.PROFILE), true);
+        scratch.close();
+        return scratch.profile;
+      } catch (IOException e) {
+        // Writing to memory cannot fail
+        throw new IllegalStateException(e);
+      }
+    }
+  }
+
+  /**
+   * The words taken by each kind of site when written inline, measured
+   * once by writing each to a scratch {@code CodeWriter}.
+   */
+  private static final class InlineWords {
+    static final int CALL = measure("call", "Sys.init", "0");
+    static final int RETURN = measure("return");
+    static final int COMPARISON = measure("eq");
+
+    private static int measure(String... commandElements) {
+      try {
+        CodeWriter scratch = new CodeWriter(new MemorySink(), EnumSet.of(Option.LEAN), false);
+        Mapping.getCommand(commandElements).writeCommand(scratch);
+        return scratch.statistics.instructions;
+      } catch (IOException e) {
+        // Writing to memory cannot fail
+        throw new IllegalStateException(e);
+      }
+    }
+  }
+}
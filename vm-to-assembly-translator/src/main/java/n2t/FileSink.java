@@ -0,0 +1,85 @@
+package n2t;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes assembly code to a file through a {@code FileChannel}.
+ *
+ * <p>Each block is encoded into a reused direct buffer, which is written
+ * to the channel whenever it fills up and when the sink is closed.
+ */
+public class FileSink implements OutputSink {
+  // Size of the buffer holding encoded bytes before they are written to the file
+  private static final int BUFFER_BYTES = 1 << 16;
+
+  private final FileChannel channel;
+  private final ByteBuffer buffer;
+  private final CharsetEncoder encoder;
+
+  /**
+   * Creates the output file, replacing any existing file at the path.
+   *
+   * @param outPath the path of the output file
+   * @throws IOException if the file cannot be created
+   */
+  public FileSink(String outPath) throws IOException {
+    this(Paths.get(outPath));
+  }
+
+  /**
+   * Creates the output file, replacing any existing file at the path.
+   *
+   * @param outPath the path of the output file
+   * @throws IOException if the file cannot be created
+   */
+  public FileSink(Path outPath) throws IOException {
+    this.channel = FileChannel.open(outPath, StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+    this.buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+    this.encoder = StandardCharsets.UTF_8.newEncoder();
+  }
+
+  @Override
+  public void write(CharSequence text) throws IOException {
+    CharBuffer chars = CharBuffer.wrap(text);
+    CoderResult result = encoder.encode(chars, buffer, false);
+    while (result.isOverflow()) {
+      drain();
+      result = encoder.encode(chars, buffer, false);
+    }
+  }
+
+  /**
+   * Writes any buffered bytes to the file and closes it.
+   *
+   * @throws IOException if the bytes cannot be written or the file cannot be closed
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      encoder.encode(CharBuffer.allocate(0), buffer, true);
+      encoder.flush(buffer);
+      drain();
+    } finally {
+      channel.close();
+    }
+  }
+
+  // Writes every byte in the buffer to the file, leaving the buffer empty
+  private void drain() throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    buffer.clear();
+  }
+}
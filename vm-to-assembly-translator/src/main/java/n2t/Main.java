@@ -1,14 +1,27 @@
 package n2t;
 
+import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.InputStream;
+import java.io.FileReader;
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
-import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import n2t.assembler.HackBinWriter;
+import n2t.ir.PassManager;
+import n2t.ir.Program;
+import n2t.passes.ConstantFolding;
+import n2t.passes.DeadFunctionElimination;
+import n2t.passes.Inliner;
 
 /**
  * Drives the translation process from virtual machine code to assembly language and
@@ -21,27 +34,156 @@ import java.util.Scanner;
  * code to the output file underneath a comment of the original VM code line.
  * 
  * <p>Comments are denoted by the "//" characters, and are ignored by the assembler.
+ * With {@code --lean}, the comments and blank lines are left out of the output.
+ *
+ * <p>With {@code --shared-runtime}, calls, returns and comparisons jump to subroutines
+ * written once, and the number of ROM words this saves is reported.
+ *
+ * <p>With {@code --fuse-branches}, a comparison tested by the if-goto after it is written
+ * as a single conditional jump.
+ *
+ * <p>With {@code --stack-cache}, the top of the stack is kept in the D register between
+ * commands where possible.
+ *
+ * <p>With {@code --tail-calls}, a call directly followed by a return reuses the current
+ * function's frame, so the stack does not grow.
+ *
+ * <p>With {@code --parallel}, each file of a directory is translated on its own worker,
+ * and the results are joined in the same order as the files are translated one at a time.
+ * It cannot be combined with {@code --ir} or the passes below, which need the whole program.
+ *
+ * <p>With {@code --ir}, every file is read into an in-memory {@code Program} first, and the
+ * optimization passes chosen by the other flags are run over it by a {@code PassManager}
+ * before any assembly code is written. The time each pass took is reported. The passes
+ * are run in the order their flags are given, and any of them implies {@code --ir}:
+ *
+ * <ul>
+ *   <li>{@code --fold} folds arithmetic on constants and removes identity operations.
+ *   <li>{@code --dce} removes functions that cannot be reached from {@code Sys.init}.
+ *   <li>{@code --inline} replaces calls to small leaf functions with their body. The
+ *       largest body inlined is set by {@code --inline-limit}, in instructions.
+ * </ul>
+ *
+ * <p>With {@code --hack}, the assembly code is assembled as it is written, on a second
+ * thread, and only the machine code is written, to a .hack file. With {@code --hackbin} it
+ * is written as a packed .hackbin ROM image instead. The .asm file is also kept with
+ * {@code --keep-asm}.
+ *
+ * <p>With {@code --profile}, the instructions and worst-case straight-line cycles of each
+ * function and each kind of VM command are reported, listing the functions with the most
+ * instructions, as many as {@code --profile-top} gives. With {@code --profile-json}, the
+ * whole profile is also written to the given file as JSON.
  */
 public class Main {
   /**
   * Takes the name of an input file or directory of files containing VM code and translates it to 
   * assembly language in an output file containing the same base name with a new .asm extension.
   *
-  * @param args the name of the input file or directory
+  * @param args the optional flags and the name of the input file or directory
   */
   public static void main(String[] args) {
     // Initialize the input file path, base name, output file path, and list of VM files
     String inPathString = "";
     String outPath = "";
     List<String> vmFiles = new ArrayList<String>();
-    String fileBaseName = "";
+    Set<CodeWriter.Option> options = EnumSet.noneOf(CodeWriter.Option.class);
+    boolean parallel = false;
+    boolean useIr = false;
+    PassManager passManager = new PassManager();
+    Inliner inliner = null;
+    // The largest body inlined, or -1 to keep the default
+    int inlineLimit = -1;
+    // The extension of the machine code file, or null to write only the assembly code
+    String machineCode = null;
+    boolean keepAsm = false;
+    int profileTop = 10;
+    String profileJson = null;
+
+    // Separate the flags from the file path
+    for (int i = 0; i < args.length; i++) {
+      String arg = args[i];
+      if (arg.equals("--lean")) {
+        options.add(CodeWriter.Option.LEAN);
+      } else if (arg.equals("--shared-runtime")) {
+        options.add(CodeWriter.Option.SHARED_RUNTIME);
+      } else if (arg.equals("--fuse-branches")) {
+        options.add(CodeWriter.Option.FUSE_BRANCHES);
+      } else if (arg.equals("--stack-cache")) {
+        options.add(CodeWriter.Option.STACK_CACHE);
+      } else if (arg.equals("--tail-calls")) {
+        options.add(CodeWriter.Option.TAIL_CALLS);
+      } else if (arg.equals("--parallel")) {
+        parallel = true;
+      } else if (arg.equals("--ir")) {
+        useIr = true;
+      } else if (arg.equals("--fold")) {
+        passManager.add(new ConstantFolding());
+      } else if (arg.equals("--dce")) {
+        passManager.add(new DeadFunctionElimination(options));
+      } else if (arg.equals("--inline")) {
+        inliner = new Inliner();
+        passManager.add(inliner);
+      } else if (arg.equals("--inline-limit") || arg.equals("--profile-top")
+          || arg.equals("--profile-json")) {
+        // These flags take a value, which must not be mistaken for the path
+        if (i + 1 == args.length) {
+          System.out.println("Missing value for " + arg);
+          printUsage();
+          return;
+        }
+        String value = args[++i];
+        if (arg.equals("--inline-limit")) {
+          inlineLimit = parseCount(value);
+          if (inlineLimit < 0) {
+            System.out.println("Inlining size limit is not a number of instructions: " + value);
+            printUsage();
+            return;
+          }
+        } else if (arg.equals("--profile-top")) {
+          options.add(CodeWriter.Option.PROFILE);
+          profileTop = parseCount(value);
+          if (profileTop < 0) {
+            System.out.println("Profile size is not a number of functions: " + value);
+            printUsage();
+            return;
+          }
+        } else {
+          options.add(CodeWriter.Option.PROFILE);
+          profileJson = value;
+        }
+      } else if (arg.equals("--hack")) {
+        machineCode = ".hack";
+      } else if (arg.equals("--hackbin")) {
+        machineCode = HackBinWriter.EXTENSION;
+      } else if (arg.equals("--keep-asm")) {
+        keepAsm = true;
+      } else if (arg.equals("--profile")) {
+        options.add(CodeWriter.Option.PROFILE);
+      } else if (arg.startsWith("--")) {
+        System.out.println("Unknown option: " + arg);
+        printUsage();
+        return;
+      } else {
+        inPathString = arg;
+      }
+    }
+    if (inlineLimit >= 0) {
+      if (inliner == null) {
+        System.out.println("--inline-limit is only used with --inline");
+        printUsage();
+        return;
+      }
+      inliner.setMaxSize(inlineLimit);
+    }
+    if (parallel && (useIr || !passManager.isEmpty())) {
+      System.out.println("--parallel cannot be combined with --ir or an optimization pass");
+      printUsage();
+      return;
+    }
 
     // If no file or directory is provided, use the current directory by default
-    if (args.length == 0) {
+    if (inPathString.isEmpty()) {
       inPathString = System.getProperty("user.dir");
-    } else {
-      // Otherwise use the given string
-      inPathString = args[0];
     }
     Path inPath = Paths.get(inPathString);
 
@@ -49,58 +191,189 @@ public class Main {
       // Creating the .asm output file path and base name for label declarations
       outPath = inPathString + ".asm";
       vmFiles = getFileList(inPath);
-    } else if (args[0].endsWith(".vm")) {
+    } else if (inPathString.endsWith(".vm")) {
       // Check that the provided file path ends in .vm then runs translater
 
       vmFiles.add(inPathString);
       // Create the .asm output file path
       outPath = inPathString.replaceAll("\\.\\w+$", ".asm");
     } else {
-      System.out.println("Usage: java n2t.Main 'file.vm or directory'");
+      printUsage();
+      return;
     }
 
     try {
-      // Construct the Parser and CodeWriter
-      Parser parser = new Parser();
-      CodeWriter codeWriter = new CodeWriter(outPath);
-
-      Path currentVmFilePath = null;
-      String currentVmFileString = "";
+      // Construct the CodeWriter, which writes the bootstrap code first
+      OutputSink sink;
+      if (machineCode == null) {
+        sink = new FileSink(outPath);
+      } else {
+        Path machineCodePath = Paths.get(outPath.replaceAll("\\.asm$", machineCode));
+        sink = new AssemblerSink(machineCodePath, machineCode.equals(HackBinWriter.EXTENSION),
+            keepAsm ? new FileSink(outPath) : null);
+      }
+      CodeWriter codeWriter = new CodeWriter(sink, options);
 
-      // Run the translator on each .vm file in the directory,
-      // writing the assembly code to the same .asm file
-      for (String vmFile : vmFiles) {
-        try {
-          InputStream is = new FileInputStream(vmFile);
-
-          // Set the CodeWriter's current file name to the current .vm file
-          currentVmFilePath = Paths.get(vmFile);
-          currentVmFileString = currentVmFilePath.getFileName().toString();
-          fileBaseName = currentVmFileString.substring(0, currentVmFileString.lastIndexOf('.'));
-          codeWriter.setCurrentFileName(fileBaseName);
-
-          // Iterate over each line of the input file and write the corresponding
-          // assembly code to the output file
-          try (Scanner scan = new Scanner(is)) {
-            while (scan.hasNextLine()) {
-              String currentLine = scan.nextLine();
-              codeWriter.write(parser.parse(currentLine));
+      try {
+        if (useIr || !passManager.isEmpty()) {
+          translateProgram(codeWriter, vmFiles, passManager);
+        } else if (parallel) {
+          translateParallel(codeWriter, vmFiles, options);
+        } else {
+          // Run the translator on each .vm file in the directory,
+          // writing the assembly code to the same .asm file
+          Parser parser = new Parser();
+          for (String vmFile : vmFiles) {
+            try {
+              translateFile(parser, codeWriter, vmFile);
+            } catch (Exception e) {
+              System.out.println("Error translating file " + vmFile + ": " + e);
             }
           }
-        } catch (Exception e) {
-          System.out.println("Error translating file " + vmFile + ": " + e);
+        }
+      } finally {
+        // Close the output file after all files are translated, or the translation failed,
+        // which also lets the assembler thread finish
+        codeWriter.close();
+      }
+      if (options.contains(CodeWriter.Option.SHARED_RUNTIME)) {
+        System.out.println(codeWriter.statistics().sharedRuntimeReport());
+      }
+      CodeProfile profile = codeWriter.statistics().profile();
+      if (profile != null) {
+        System.out.print(profile.report(profileTop));
+        if (profileJson != null) {
+          Files.writeString(Paths.get(profileJson), profile.toJson());
         }
       }
-      // Close the output file after all files are translated
-      codeWriter.close();
       System.out.println("Translation complete.");
     } catch (Exception e) {
       System.out.println("Error constructing Parser or CodeWriter using given name: " + e);
     }
   }
 
+  // Returns the value of a count given to a flag, or -1 if it is not a non-negative number
+  private static int parseCount(String value) {
+    try {
+      int count = Integer.parseInt(value);
+      return count < 0 ? -1 : count;
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  // Prints the accepted flags and arguments
+  private static void printUsage() {
+    System.out.println("Usage: java n2t.Main [--lean] [--shared-runtime] [--fuse-branches]"
+        + " [--stack-cache] [--tail-calls] [--parallel | [--ir] [--fold] [--dce]"
+        + " [--inline [--inline-limit instructions]]] [--hack | --hackbin] [--keep-asm]"
+        + " [--profile [--profile-top count] [--profile-json file]]"
+        + " 'file.vm or directory'");
+  }
+
+  /**
+   * Translates each .vm file into its own in-memory buffer on a separate worker,
+   * then writes the buffers after the bootstrap code in the order of the file list.
+   *
+   * @param codeWriter the {@code CodeWriter} of the output file, holding the bootstrap code
+   * @param vmFiles the .vm files to translate
+   * @param options the changes to the assembly code written
+   * @throws IOException if the translated code cannot be written to the output file
+   */
+  private static void translateParallel(CodeWriter codeWriter, List<String> vmFiles,
+      Set<CodeWriter.Option> options) throws IOException {
+    List<Future<CodeWriter>> results = new ArrayList<>();
+    List<MemorySink> sinks = new ArrayList<>();
+    int workers = Math.min(Math.max(vmFiles.size(), 1), Runtime.getRuntime().availableProcessors());
+
+    try (ExecutorService executor = Executors.newFixedThreadPool(workers)) {
+      for (String vmFile : vmFiles) {
+        MemorySink sink = new MemorySink();
+        sinks.add(sink);
+        results.add(executor.submit(() -> {
+          CodeWriter fileWriter = new CodeWriter(sink, options, false);
+          translateFile(new Parser(), fileWriter, vmFile);
+          fileWriter.close();
+          return fileWriter;
+        }));
+      }
+
+      // Merge the files in a stable order, regardless of which finished first
+      for (int i = 0; i < vmFiles.size(); i++) {
+        try {
+          CodeWriter fileWriter = results.get(i).get();
+          codeWriter.writeTranslated(sinks.get(i).contents(), fileWriter.statistics());
+        } catch (ExecutionException e) {
+          System.out.println("Error translating file " + vmFiles.get(i) + ": " + e.getCause());
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+      }
+    }
+  }
+
+  /**
+   * Reads every .vm file into a {@code Program}, runs the passes over it, then writes it.
+   *
+   * @param codeWriter the {@code CodeWriter} of the output file, holding the bootstrap code
+   * @param vmFiles the .vm files to translate
+   * @param passManager the passes to run
+   * @throws IOException if the assembly code cannot be written
+   */
+  private static void translateProgram(CodeWriter codeWriter, List<String> vmFiles,
+      PassManager passManager) throws IOException {
+    Program program = new Program();
+    Parser parser = new Parser();
+    for (String vmFile : vmFiles) {
+      try (BufferedReader reader = new BufferedReader(new FileReader(vmFile))) {
+        String fileBaseName = baseName(vmFile);
+        String currentLine;
+        while ((currentLine = reader.readLine()) != null) {
+          program.add(fileBaseName, parser.parse(currentLine));
+        }
+      } catch (Exception e) {
+        System.out.println("Error reading file " + vmFile + ": " + e);
+      }
+    }
+
+    passManager.run(program);
+    System.out.print(passManager.report());
+    program.writeTo(codeWriter);
+  }
+
+  /**
+   * Translates a single .vm file, writing the assembly code through the given {@code CodeWriter}.
+   *
+   * @param parser the parser for each line of VM code
+   * @param codeWriter the writer for the assembly code
+   * @param vmFile the path of the .vm file
+   * @throws IOException if the file cannot be read or the code cannot be written
+   */
+  private static void translateFile(Parser parser, CodeWriter codeWriter, String vmFile)
+      throws IOException {
+    // Set the CodeWriter's current file name to the current .vm file
+    codeWriter.setCurrentFileName(baseName(vmFile));
+
+    // Iterate over each line of the input file and write the corresponding
+    // assembly code to the output file
+    try (BufferedReader reader = new BufferedReader(new FileReader(vmFile))) {
+      String currentLine;
+      while ((currentLine = reader.readLine()) != null) {
+        codeWriter.write(parser.parse(currentLine));
+      }
+    }
+  }
+
+  // Returns the name of a .vm file without its directory or extension, used for static variables
+  private static String baseName(String vmFile) {
+    String vmFileName = Paths.get(vmFile).getFileName().toString();
+    return vmFileName.substring(0, vmFileName.lastIndexOf('.'));
+  }
+
   /**
-   * Returns a list of all the .vm files in the given directory.
+   * Returns a list of all the .vm files in the given directory, sorted by name
+   * so that the output does not depend on the order the file system lists them in.
    *
    * @param inPath the file or directory to search for .vm files
    * @return a list of all the .vm files in the given directory
@@ -115,6 +388,7 @@ public class Main {
         outputFileList.add(file.getAbsolutePath());
       }
     }
+    Collections.sort(outputFileList);
     return outputFileList;
   }
 }
\ No newline at end of file
@@ -1,10 +1,5 @@
 package n2t;
 
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
-import java.util.function.Function;
 import n2t.commands.Arithmetic;
 import n2t.commands.CommandCall;
 import n2t.commands.CommandFunction;
@@ -15,6 +10,8 @@ import n2t.commands.Goto;
 import n2t.commands.Label;
 import n2t.commands.Pop;
 import n2t.commands.Push;
+import n2t.ir.Opcode;
+import n2t.ir.Segment;
 
 /**
  * Holds the standard VM mapping for the Hack computer.
@@ -29,28 +26,28 @@ public class Mapping {
    * @param index the index of the segment
    * @return the memory address of the segment[index] as a String
    */
-  public static String accessMemory(String segment, String index, String fileBaseName) {
+  public static String accessMemory(Segment segment, int index, String fileBaseName) {
     switch (segment) {
-      case "local":
+      case LOCAL:
         return "LCL";
-      case "argument":
+      case ARGUMENT:
         return "ARG";
-      case "this":
+      case THIS:
         return "THIS";
-      case "that":
+      case THAT:
         return "THAT";
-      case "pointer":
-        if (index.equals("0")) {
+      case POINTER:
+        if (index == 0) {
           return "THIS";
         } else {
           return "THAT";
         }
-      case "temp":
-        return Integer.toString(5 + Integer.parseInt(index));
-      case "static":
+      case TEMP:
+        return Integer.toString(5 + index);
+      case STATIC:
         return fileBaseName + "." + index;
       default:
-        throw new IllegalArgumentException("Unknown segment: " + segment);
+        throw new IllegalArgumentException("Unknown segment: " + segment.mnemonic());
     }
   }
 
@@ -59,40 +56,80 @@ public class Mapping {
    *
    * @param commandElements the VM line elements
    * @return the mapped value of the given VM segment
+   * @throws IllegalArgumentException if the command type or segment is unknown, or an argument
+   *     is missing or not a non-negative number
    */
   public static CommandType getCommand(String[] commandElements) {
-    Function<String[], CommandType> commandConstructor = COMMAND_MAP.get(commandElements[0]);
+    Opcode opcode = Opcode.of(commandElements[0]);
+    switch (opcode) {
+      case PUSH:
+      case POP:
+        return getCommand(opcode, Segment.of(argument(commandElements, 1)), null,
+            parseIndex(argument(commandElements, 2)));
+      case LABEL:
+      case GOTO:
+      case IF_GOTO:
+        return getCommand(opcode, null, argument(commandElements, 1), 0);
+      case FUNCTION:
+      case CALL:
+        return getCommand(opcode, null, argument(commandElements, 1), parseIndex(argument(commandElements, 2)));
+      default:
+        return getCommand(opcode, null, null, 0);
+    }
+  }
 
-    if (commandConstructor == null) {
-      throw new IllegalArgumentException("VM Code contains illegal command type: " 
-      + commandElements[0]);
+  /**
+   * Returns a new {@code CommandType} with the given operands.
+   *
+   * @param opcode the operation
+   * @param segment the segment of a push or pop, otherwise {@code null}
+   * @param symbol the label or function name, otherwise {@code null}
+   * @param index the segment index, number of locals or number of arguments, otherwise 0
+   * @return the command
+   */
+  public static CommandType getCommand(Opcode opcode, Segment segment, String symbol, int index) {
+    switch (opcode) {
+      case PUSH:
+        return new Push(segment, index);
+      case POP:
+        return new Pop(segment, index);
+      case LABEL:
+        return new Label(symbol);
+      case GOTO:
+        return new Goto(symbol);
+      case IF_GOTO:
+        return new CommandIf(symbol);
+      case FUNCTION:
+        return new CommandFunction(symbol, index);
+      case CALL:
+        return new CommandCall(symbol, index);
+      case RETURN:
+        return new CommandReturn();
+      default:
+        return new Arithmetic(opcode);
     }
-    return COMMAND_MAP.get(commandElements[0]).apply(commandElements);
   }
 
-  // A map of each command type to its corresponding constructor
-  private static final Map<String, Function<String[], CommandType>> COMMAND_MAP
-      = new HashMap<String, Function<String[], CommandType>>() {
-        {
-          put("add", Arithmetic::new);
-          put("sub", Arithmetic::new);
-          put("neg", Arithmetic::new);
-          put("eq", Arithmetic::new);
-          put("gt", Arithmetic::new);
-          put("lt", Arithmetic::new);
-          put("and", Arithmetic::new);
-          put("or", Arithmetic::new);
-          put("not", Arithmetic::new);
-          put("push", Push::new);
-          put("pop", Pop::new);
-          put("label", Label::new);
-          put("goto", Goto::new);
-          put("if-goto", CommandIf::new);
-          put("function", CommandFunction::new);
-          put("call", CommandCall::new);
-          put("return", CommandReturn::new);
-        }
-      };
+  // Returns the element at the given position of a line, which must be present
+  private static String argument(String[] commandElements, int position) {
+    if (position >= commandElements.length) {
+      throw new IllegalArgumentException("Missing argument for " + commandElements[0]);
+    }
+    return commandElements[position];
+  }
+
+  // Parses a segment index or count, which must be a non-negative number
+  private static int parseIndex(String index) {
+    try {
+      int value = Integer.parseInt(index);
+      if (value < 0) {
+        throw new IllegalArgumentException("Negative numeric argument: " + index);
+      }
+      return value;
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Non-numeric argument: " + index);
+    }
+  }
 
   // A set of all the valid label characters
   private static final String FUNCTION_CHARS = "abcdefghijklmnopqrstuvwxyz"
@@ -101,21 +138,19 @@ public class Mapping {
   // A set of all the valid function name characters
   private static final String LABEL_CHARS = FUNCTION_CHARS + ":$";
 
-  // Create a hash set for function and label characters for more efficient lookup
-  private static final Set<Character> VALID_FUNCTION_CHARS = new HashSet<>();
-
-  static {
-    for (char c : FUNCTION_CHARS.toCharArray()) {
-      VALID_FUNCTION_CHARS.add(c);
-    }
-  }
+  // The valid function name and label characters, as bitmaps of the ASCII range with one bit per character
+  private static final long[] VALID_FUNCTION_CHARS = bitmap(FUNCTION_CHARS);
 
-  private static final Set<Character> VALID_LABEL_CHARS = new HashSet<>();
+  private static final long[] VALID_LABEL_CHARS = bitmap(LABEL_CHARS);
 
-  static {
-    for (char c : LABEL_CHARS.toCharArray()) {
-      VALID_LABEL_CHARS.add(c);
+  // Builds a 128-bit bitmap of the given ASCII characters, as two words of 64 bits
+  private static long[] bitmap(String chars) {
+    long[] bits = new long[2];
+    for (int i = 0; i < chars.length(); i++) {
+      char c = chars.charAt(i);
+      bits[c >>> 6] |= 1L << c;
     }
+    return bits;
   }
 
   /**
@@ -141,12 +176,13 @@ public class Mapping {
   }
 
   // Checks if all of the characters in the given label are within the given character set
-  private static boolean isValidName(String label, Set<Character> validSet) {
-    for (char c : label.toCharArray()) {
-      if (!validSet.contains(c)) {
+  private static boolean isValidName(String label, long[] validSet) {
+    for (int i = 0; i < label.length(); i++) {
+      char c = label.charAt(i);
+      if (c >= 128 || (validSet[c >>> 6] & 1L << c) == 0) {
         return false;
       }
     }
     return true;
   }
-}
\ No newline at end of file
+}
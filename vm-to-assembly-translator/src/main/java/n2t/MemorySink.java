@@ -0,0 +1,29 @@
+package n2t;
+
+/**
+ * Keeps the assembly code in memory, for passing it on without writing a file.
+ */
+public class MemorySink implements OutputSink {
+  private final StringBuilder contents = new StringBuilder();
+
+  @Override
+  public void write(CharSequence text) {
+    contents.append(text);
+  }
+
+  /**
+   * Does nothing, the code stays available after the sink is closed.
+   */
+  @Override
+  public void close() {
+  }
+
+  /**
+   * Returns all the assembly code written so far.
+   *
+   * @return the assembly code
+   */
+  public String contents() {
+    return contents.toString();
+  }
+}
@@ -0,0 +1,20 @@
+package n2t;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Receives the assembly code written by the {@code CodeWriter}.
+ *
+ * <p>The {@code CodeWriter} collects its lines in a buffer and hands them
+ * to the sink in large blocks, each ending with a complete line.
+ */
+public interface OutputSink extends Closeable {
+  /**
+   * Writes a block of assembly code.
+   *
+   * @param text one or more lines of assembly code, each ending with a newline
+   * @throws IOException if the code cannot be written
+   */
+  public void write(CharSequence text) throws IOException;
+}
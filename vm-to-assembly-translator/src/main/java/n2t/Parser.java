@@ -1,13 +1,25 @@
 package n2t;
 
 import n2t.commands.CommandType;
+import n2t.ir.Opcode;
+import n2t.ir.Segment;
 
 /**
  * Parses each VM command, an entire line from the input file,
  * into the separate valid elements, to be given to the
  * {@code CodeWriter} to write to the output file.
+ *
+ * <p>Each line is scanned once, left to right, token by token. The operation
+ * and segment are matched in place and the index is read digit by digit, so
+ * only a label or function name is ever copied out of the line.
  */
 public class Parser {
+  // The line being parsed
+  private String line;
+  // The end of the code on the line, before any comment
+  private int end;
+  // The position of the next character to scan
+  private int position;
 
   /**
    * Constructs a {@code Parser} to handle the input file.
@@ -19,31 +31,107 @@ public class Parser {
    * Parses the current line of VM code into separate elements.
    *
    * @param currentLine the line of VM code to be parsed
+   * @return the command on the line, or {@code null} if it holds none
+   * @throws IllegalArgumentException if the command type or segment is unknown, or an argument
+   *     is missing or not a non-negative number
    */
   public CommandType parse(String currentLine) {
-    String codingLine = getCodingSegment(currentLine);
+    line = currentLine;
+    int commentIndex = currentLine.indexOf("//");
+    end = commentIndex != -1 ? commentIndex : currentLine.length();
+    position = 0;
 
-    // If the line is empty, return an empty array
-    if (codingLine.isEmpty()) {
+    // If the line is empty, there is no command
+    if (!nextToken()) {
       return null;
-    } else {
-      return Mapping.getCommand(codingLine.split("\\s+"));
+    }
+    Opcode opcode = Opcode.of(line, position, tokenEnd());
+    position = tokenEnd();
+    switch (opcode) {
+      case PUSH:
+      case POP:
+        int from = argument(opcode);
+        position = tokenEnd();
+        Segment segment = Segment.of(line, from, position);
+        return Mapping.getCommand(opcode, segment, null, index(opcode));
+      case LABEL:
+      case GOTO:
+      case IF_GOTO:
+        return Mapping.getCommand(opcode, null, symbol(opcode), 0);
+      case FUNCTION:
+      case CALL:
+        String symbol = symbol(opcode);
+        return Mapping.getCommand(opcode, null, symbol, index(opcode));
+      default:
+        return Mapping.getCommand(opcode, null, null, 0);
     }
   }
 
-  /**
-   * Returns the coding segment of the current line, excluding any comments or whitespace.
-   *
-   * @param currentLine the current line of VM code
-   * @return the coding segment of the current line
-   */
-  private String getCodingSegment(String currentLine) {
-    int commentIndex = currentLine.indexOf("//");
+  // Skips whitespace up to the next token, returning false if the code ends first
+  private boolean nextToken() {
+    while (position < end && line.charAt(position) <= ' ') {
+      position++;
+    }
+    return position < end;
+  }
+
+  // Returns the end of the token starting at the current position
+  private int tokenEnd() {
+    int i = position;
+    while (i < end && line.charAt(i) > ' ') {
+      i++;
+    }
+    return i;
+  }
 
-    if (commentIndex != -1) {
-      return currentLine.substring(0, commentIndex).trim();
-    } else {
-      return currentLine.trim();
+  // Moves to the next argument of the operation, which must be present, and returns its start
+  private int argument(Opcode opcode) {
+    if (!nextToken()) {
+      throw new IllegalArgumentException("Missing argument for " + opcode.mnemonic());
     }
+    return position;
+  }
+
+  // Copies the next argument out of the line as a label or function name
+  private String symbol(Opcode opcode) {
+    int from = argument(opcode);
+    position = tokenEnd();
+    return line.substring(from, position);
+  }
+
+  // Reads the next argument as a segment index or count, which must be a non-negative number
+  private int index(Opcode opcode) {
+    int from = argument(opcode);
+    int to = tokenEnd();
+    position = to;
+
+    // Accept what Integer.parseInt would, a sign followed by at least one digit
+    char sign = line.charAt(from);
+    int i = sign == '-' || sign == '+' ? from + 1 : from;
+    long value = 0;
+    if (i == to) {
+      throw nonNumeric(from, to);
+    }
+    for (; i < to; i++) {
+      char c = line.charAt(i);
+      if (c < '0' || c > '9') {
+        throw nonNumeric(from, to);
+      }
+      value = value * 10 + (c - '0');
+      if (value > Integer.MAX_VALUE + 1L) {
+        throw nonNumeric(from, to);
+      }
+    }
+    if (sign == '-' && value != 0) {
+      throw new IllegalArgumentException("Negative numeric argument: " + line.substring(from, to));
+    }
+    if (value > Integer.MAX_VALUE) {
+      throw nonNumeric(from, to);
+    }
+    return (int) value;
+  }
+
+  private IllegalArgumentException nonNumeric(int from, int to) {
+    return new IllegalArgumentException("Non-numeric argument: " + line.substring(from, to));
   }
-}
\ No newline at end of file
+}
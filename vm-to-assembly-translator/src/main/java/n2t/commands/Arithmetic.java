@@ -2,6 +2,7 @@ package n2t.commands;
 
 import java.io.IOException;
 import n2t.CodeWriter;
+import n2t.ir.Opcode;
 
 /**
  * Represents the Arithmetic command in the VM language.
@@ -9,13 +10,13 @@ import n2t.CodeWriter;
 public class Arithmetic extends CommonCommand {
 
   /**
-   * Constructor for the Arithmetic class. Only expects a command
-   * type in the arguments. Sets arg1 and arg2 to null.
+   * Constructor for the Arithmetic class. Only expects the arithmetic
+   * operation. Sets arg1 and arg2 to null.
    *
-   * @param args the command type for the arithmetic command
+   * @param opcode the arithmetic operation
    */
-  public Arithmetic(String[] args) {
-    super(args);
+  public Arithmetic(Opcode opcode) {
+    super(opcode, null, null, 0);
   }
 
   /**
@@ -2,6 +2,7 @@ package n2t.commands;
 
 import java.io.IOException;
 import n2t.CodeWriter;
+import n2t.ir.Opcode;
 
 /**
  * Represents the call command in the VM language.
@@ -10,10 +11,11 @@ public class CommandCall extends CommonCommand {
   /**
    * Constructor for the Call class.
    *
-   * @param args the arguments of the command
+   * @param functionName the name of the called function
+   * @param argumentCount the number of arguments pushed before the call
    */
-  public CommandCall(String[] args) {
-    super(args);
+  public CommandCall(String functionName, int argumentCount) {
+    super(Opcode.CALL, null, functionName, argumentCount);
   } 
 
   /**
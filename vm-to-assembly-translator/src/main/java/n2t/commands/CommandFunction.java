@@ -2,6 +2,7 @@ package n2t.commands;
 
 import java.io.IOException;
 import n2t.CodeWriter;
+import n2t.ir.Opcode;
 
 /**
  * Represents the function command in the VM language.
@@ -10,10 +11,11 @@ public class CommandFunction extends CommonCommand {
   /**
    * Constructor for the Function class.
    *
-   * @param args the arguments of the command
+   * @param functionName the name of the function
+   * @param localCount the number of local variables
    */
-  public CommandFunction(String[] args) {
-    super(args);
+  public CommandFunction(String functionName, int localCount) {
+    super(Opcode.FUNCTION, null, functionName, localCount);
   }
   
   /**
@@ -2,6 +2,7 @@ package n2t.commands;
 
 import java.io.IOException;
 import n2t.CodeWriter;
+import n2t.ir.Opcode;
 
 /**
  * Represents the If command in the VM language.
@@ -10,10 +11,10 @@ public class CommandIf extends CommonCommand {
   /**
    * The constructor for the If command.
    *
-   * @param args The arguments for the If command.
+   * @param label The label to jump to.
    */
-  public CommandIf(String[] args) {
-    super(args);
+  public CommandIf(String label) {
+    super(Opcode.IF_GOTO, null, label, 0);
   } 
 
   /**
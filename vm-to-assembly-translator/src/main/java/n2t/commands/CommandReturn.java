@@ -2,6 +2,7 @@ package n2t.commands;
 
 import java.io.IOException;
 import n2t.CodeWriter;
+import n2t.ir.Opcode;
 
 /**
  * Represents the return command in the VM language.
@@ -9,11 +10,9 @@ import n2t.CodeWriter;
 public class CommandReturn extends CommonCommand {
   /**
    * Constructor for the Return class.
-   *
-   * @param args the arguments of the command
    */
-  public CommandReturn(String[] args) {
-    super(args);
+  public CommandReturn() {
+    super(Opcode.RETURN, null, null, 0);
   } 
 
   /**
@@ -2,11 +2,35 @@ package n2t.commands;
 
 import java.io.IOException;
 import n2t.CodeWriter;
+import n2t.ir.Opcode;
+import n2t.ir.Segment;
 
 /**
  * Represents the type of command in the VM language.
  */
 public interface CommandType {
+  /**
+   * Returns the operation of the command.
+   *
+   * @return the opcode
+   */
+  public Opcode opcode();
+
+  /**
+   * Returns the segment of a push or pop command.
+   *
+   * @return the segment, or null for other commands
+   */
+  public Segment segment();
+
+  /**
+   * Returns the numeric argument of the command: the segment index of a push or pop,
+   * or the number of local variables or arguments of a function or call.
+   *
+   * @return the numeric argument, or 0 if the command has none
+   */
+  public int index();
+
   /**
    * Retuns the type of command.
    *
@@ -40,4 +64,12 @@ public interface CommandType {
    * @return the original line of the command as a String
    */
   public String getOriginalLine();
+
+  /**
+   * Appends the original line of the command to the given builder,
+   * without building it as a separate String.
+   *
+   * @param builder where the line is appended
+   */
+  public void appendOriginalLine(StringBuilder builder);
 }
\ No newline at end of file
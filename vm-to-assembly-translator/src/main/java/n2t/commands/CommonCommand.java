@@ -1,41 +1,94 @@
 package n2t.commands;
 
+import n2t.ir.Opcode;
+import n2t.ir.Segment;
+
 /**
  * Consolidates the common fields of all VM commands.
+ *
+ * <p>The operands are kept typed, so the {@code CodeWriter} can dispatch on
+ * them directly. The String views of the command are only built when asked for.
  */
 public abstract class CommonCommand implements CommandType {
-  protected String commandType;
-  protected String arg1;
-  protected String arg2;
+  protected final Opcode opcode;
+  protected final Segment segment;
+  protected final String symbol;
+  protected final int index;
 
   /**
    * Constructor for the CommonCommand class.
    *
-   * @param args the arguments of the command
+   * @param opcode the operation
+   * @param segment the segment of a push or pop, otherwise {@code null}
+   * @param symbol the label or function name, otherwise {@code null}
+   * @param index the segment index, number of locals or number of arguments, otherwise 0
    */
-  public CommonCommand(String[] args) {
-    this.commandType = args[0];
-    this.arg1 = args.length > 1 ? args[1] : null; // Set to null if no arg1 exists
-    this.arg2 = args.length > 2 ? args[2] : null; // Set to null if no arg2 exists
+  protected CommonCommand(Opcode opcode, Segment segment, String symbol, int index) {
+    this.opcode = opcode;
+    this.segment = segment;
+    this.symbol = symbol;
+    this.index = index;
+  }
+
+  @Override
+  public Opcode opcode() {
+    return opcode;
+  }
+
+  @Override
+  public Segment segment() {
+    return segment;
+  }
+
+  @Override
+  public int index() {
+    return index;
   }
 
   @Override
   public String typeCommand() {
-    return commandType;
+    return opcode.mnemonic();
   }
 
   @Override
   public String arg1() {
-    return arg1;
+    return segment != null ? segment.mnemonic() : symbol;
   }
 
   @Override
   public String arg2() {
-    return arg2;
+    return hasIndex() ? Integer.toString(index) : null;
   }
     
   @Override
   public String getOriginalLine() {
-    return commandType + (arg1 != null ? " " + arg1 : "") + (arg2 != null ? " " + arg2 : "");
+    StringBuilder builder = new StringBuilder();
+    appendOriginalLine(builder);
+    return builder.toString();
+  }
+
+  @Override
+  public void appendOriginalLine(StringBuilder builder) {
+    builder.append(opcode.mnemonic());
+    String arg1 = arg1();
+    if (arg1 != null) {
+      builder.append(' ').append(arg1);
+    }
+    if (hasIndex()) {
+      builder.append(' ').append(index);
+    }
+  }
+
+  // Returns whether the command has a numeric argument
+  private boolean hasIndex() {
+    switch (opcode) {
+      case PUSH:
+      case POP:
+      case FUNCTION:
+      case CALL:
+        return true;
+      default:
+        return false;
+    }
   }
 }
@@ -2,6 +2,7 @@ package n2t.commands;
 
 import java.io.IOException;
 import n2t.CodeWriter;
+import n2t.ir.Opcode;
 
 /**
  * Represents the Goto command in the VM language.
@@ -10,10 +11,10 @@ public class Goto extends CommonCommand {
   /**
    * Constructor for the Goto class.
    *
-   * @param args the arguments of the command
+   * @param label the label to jump to
    */
-  public Goto(String[] args) {
-    super(args);
+  public Goto(String label) {
+    super(Opcode.GOTO, null, label, 0);
   } 
 
   /**
@@ -2,6 +2,7 @@ package n2t.commands;
 
 import java.io.IOException;
 import n2t.CodeWriter;
+import n2t.ir.Opcode;
 
 /**
  * Represents the label command in the VM language.
@@ -10,10 +11,10 @@ public class Label extends CommonCommand {
   /**
    * Constructor for the Label class.
    *
-   * @param args the arguments of the command
+   * @param label the label
    */
-  public Label(String[] args) {
-    super(args);
+  public Label(String label) {
+    super(Opcode.LABEL, null, label, 0);
   } 
 
   /**
@@ -2,6 +2,8 @@ package n2t.commands;
 
 import java.io.IOException;
 import n2t.CodeWriter;
+import n2t.ir.Opcode;
+import n2t.ir.Segment;
 
 /**
  * Represents the pop command in the VM language.
@@ -10,10 +12,11 @@ public class Pop extends CommonCommand {
   /**
    * Constructor for the Pop class.
    *
-   * @param args the arguments of the command
+   * @param segment the segment to pop to
+   * @param index the index in the segment
    */
-  public Pop(String[] args) {
-    super(args);
+  public Pop(Segment segment, int index) {
+    super(Opcode.POP, segment, null, index);
   }
 
   /**
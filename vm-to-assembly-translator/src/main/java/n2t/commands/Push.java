@@ -2,6 +2,8 @@ package n2t.commands;
 
 import java.io.IOException;
 import n2t.CodeWriter;
+import n2t.ir.Opcode;
+import n2t.ir.Segment;
 
 /**
  * Represents the push command in the VM language.
@@ -10,10 +12,11 @@ public class Push extends CommonCommand {
   /**
    * Constructor for the Push class.
    *
-   * @param args the arguments of the command
+   * @param segment the segment to push from
+   * @param index the index in the segment
    */
-  public Push(String[] args) {
-    super(args);
+  public Push(Segment segment, int index) {
+    super(Opcode.PUSH, segment, null, index);
   }
 
   /**
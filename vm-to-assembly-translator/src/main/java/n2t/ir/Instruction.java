@@ -0,0 +1,112 @@
+package n2t.ir;
+
+import n2t.Mapping;
+import n2t.commands.CommandType;
+
+/**
+ * Represents a single VM instruction with typed operands.
+ *
+ * <p>Push and pop have a segment and an index. Label, goto and if-goto have
+ * a symbol. Function and call have a symbol, and an index holding the number
+ * of local variables or arguments. Instructions are immutable, so passes
+ * change a function by replacing its instructions.
+ */
+public final class Instruction {
+  private final Opcode opcode;
+  private final Segment segment;
+  private final String symbol;
+  private final int index;
+
+  /**
+   * Constructs an instruction from its operands.
+   *
+   * @param opcode the operation
+   * @param segment the segment of a push or pop, otherwise {@code null}
+   * @param symbol the label or function name, otherwise {@code null}
+   * @param index the segment index, number of locals or number of arguments, otherwise 0
+   */
+  public Instruction(Opcode opcode, Segment segment, String symbol, int index) {
+    this.opcode = opcode;
+    this.segment = segment;
+    this.symbol = symbol;
+    this.index = index;
+  }
+
+  /**
+   * Converts a command given by the {@code Parser} to an instruction.
+   *
+   * @param command the parsed command
+   * @return the instruction
+   */
+  public static Instruction of(CommandType command) {
+    String symbol = command.segment() == null ? command.arg1() : null;
+    return new Instruction(command.opcode(), command.segment(), symbol, command.index());
+  }
+
+  /**
+   * Returns a push instruction.
+   *
+   * @param segment the segment to push from
+   * @param index the index in the segment
+   * @return the instruction
+   */
+  public static Instruction push(Segment segment, int index) {
+    return new Instruction(Opcode.PUSH, segment, null, index);
+  }
+
+  /**
+   * Returns a pop instruction.
+   *
+   * @param segment the segment to pop to
+   * @param index the index in the segment
+   * @return the instruction
+   */
+  public static Instruction pop(Segment segment, int index) {
+    return new Instruction(Opcode.POP, segment, null, index);
+  }
+
+  public Opcode opcode() {
+    return opcode;
+  }
+
+  public Segment segment() {
+    return segment;
+  }
+
+  public String symbol() {
+    return symbol;
+  }
+
+  public int index() {
+    return index;
+  }
+
+  /**
+   * Returns whether this instruction pushes the given constant.
+   *
+   * @param value the constant
+   * @return true if this is {@code push constant value}
+   */
+  public boolean isPushConstant(int value) {
+    return opcode == Opcode.PUSH && segment == Segment.CONSTANT && index == value;
+  }
+
+  /**
+   * Converts the instruction back to a command for the {@code CodeWriter}.
+   *
+   * @return the command
+   */
+  public CommandType toCommand() {
+    return Mapping.getCommand(opcode, segment, symbol, index);
+  }
+
+  /**
+   * Returns the instruction as a line of VM code.
+   *
+   * @return the VM code
+   */
+  @Override
+  public String toString() {
+    return toCommand().getOriginalLine();
+  }
+}
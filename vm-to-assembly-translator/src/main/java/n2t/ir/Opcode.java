@@ -0,0 +1,116 @@
+package n2t.ir;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Represents the operation of a VM instruction.
+ */
+public enum Opcode {
+  ADD("add"),
+  SUB("sub"),
+  NEG("neg"),
+  EQ("eq"),
+  GT("gt"),
+  LT("lt"),
+  AND("and"),
+  OR("or"),
+  NOT("not"),
+  PUSH("push"),
+  POP("pop"),
+  LABEL("label"),
+  GOTO("goto"),
+  IF_GOTO("if-goto"),
+  FUNCTION("function"),
+  CALL("call"),
+  RETURN("return");
+
+  private final String mnemonic;
+
+  Opcode(String mnemonic) {
+    this.mnemonic = mnemonic;
+  }
+
+  /**
+   * Returns the name of the operation in VM code.
+   *
+   * @return the mnemonic
+   */
+  public String mnemonic() {
+    return mnemonic;
+  }
+
+  /**
+   * Returns whether the operation is one of the arithmetic or logical commands.
+   *
+   * @return true for add, sub, neg, eq, gt, lt, and, or and not
+   */
+  public boolean isArithmetic() {
+    return ordinal() <= NOT.ordinal();
+  }
+
+  /**
+   * Returns whether the operation takes a single operand from the stack.
+   *
+   * @return true for neg and not
+   */
+  public boolean isUnary() {
+    return this == NEG || this == NOT;
+  }
+
+  /**
+   * Returns whether the operation compares two operands.
+   *
+   * @return true for eq, gt and lt
+   */
+  public boolean isComparison() {
+    return this == EQ || this == GT || this == LT;
+  }
+
+  /**
+   * Returns the operation with the given name in VM code.
+   *
+   * @param mnemonic the name of the operation
+   * @return the operation
+   * @throws IllegalArgumentException if no operation has the name
+   */
+  public static Opcode of(String mnemonic) {
+    Opcode opcode = BY_MNEMONIC.get(mnemonic);
+    if (opcode == null) {
+      throw new IllegalArgumentException("VM Code contains illegal command type: " + mnemonic);
+    }
+    return opcode;
+  }
+
+  /**
+   * Returns the operation whose name in VM code is the given part of a line,
+   * without copying it out of the line.
+   *
+   * @param line the line holding the name
+   * @param from the index of the name's first character
+   * @param to the index just past the name's last character
+   * @return the operation
+   * @throws IllegalArgumentException if no operation has the name
+   */
+  public static Opcode of(String line, int from, int to) {
+    int length = to - from;
+    for (Opcode opcode : VALUES) {
+      if (opcode.mnemonic.length() == length && line.regionMatches(from, opcode.mnemonic, 0, length)) {
+        return opcode;
+      }
+    }
+    throw new IllegalArgumentException("VM Code contains illegal command type: " + line.substring(from, to));
+  }
+
+  // Every operation, kept to avoid copying the array on each lookup
+  private static final Opcode[] VALUES = values();
+
+  // Each mnemonic mapped to its operation
+  private static final Map<String, Opcode> BY_MNEMONIC = new HashMap<>();
+
+  static {
+    for (Opcode opcode : values()) {
+      BY_MNEMONIC.put(opcode.mnemonic, opcode);
+    }
+  }
+}
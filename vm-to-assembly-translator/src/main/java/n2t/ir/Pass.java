@@ -0,0 +1,30 @@
+package n2t.ir;
+
+/**
+ * Represents a transformation of the whole program, run by the {@code PassManager}
+ * before any assembly code is written.
+ */
+public interface Pass {
+  /**
+   * Returns the name of the pass, used in reports.
+   *
+   * @return the name
+   */
+  public String name();
+
+  /**
+   * Changes the program in place.
+   *
+   * @param program the program
+   */
+  public void run(Program program);
+
+  /**
+   * Returns a summary of what the last run changed, one item per line.
+   *
+   * @return the summary, empty if there is nothing to report
+   */
+  public default String report() {
+    return "";
+  }
+}
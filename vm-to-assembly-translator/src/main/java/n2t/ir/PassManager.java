@@ -0,0 +1,66 @@
+package n2t.ir;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs a list of passes over a program in the order they were added,
+ * timing each one.
+ */
+public class PassManager {
+  private final List<Pass> passes = new ArrayList<>();
+  private final List<Long> nanos = new ArrayList<>();
+  private final List<Integer> sizes = new ArrayList<>();
+
+  /**
+   * Adds a pass to run after the passes already added.
+   *
+   * @param pass the pass
+   * @return this {@code PassManager}
+   */
+  public PassManager add(Pass pass) {
+    passes.add(pass);
+    return this;
+  }
+
+  public boolean isEmpty() {
+    return passes.isEmpty();
+  }
+
+  /**
+   * Runs every pass over the program in order.
+   *
+   * @param program the program
+   */
+  public void run(Program program) {
+    nanos.clear();
+    sizes.clear();
+    for (Pass pass : passes) {
+      long start = System.nanoTime();
+      pass.run(program);
+      nanos.add(System.nanoTime() - start);
+      sizes.add(program.size());
+    }
+  }
+
+  /**
+   * Returns the time each pass took on the last run, the size of the program
+   * after it, and each pass's own report.
+   *
+   * @return the report, one line per item
+   */
+  public String report() {
+    StringBuilder report = new StringBuilder();
+    for (int i = 0; i < nanos.size(); i++) {
+      Pass pass = passes.get(i);
+      report.append(String.format("Pass %s: %.3f ms, %d VM instructions after%n",
+          pass.name(), nanos.get(i) / 1e6, sizes.get(i)));
+      for (String line : pass.report().split("\n")) {
+        if (!line.isEmpty()) {
+          report.append("  ").append(line).append(System.lineSeparator());
+        }
+      }
+    }
+    return report.toString();
+  }
+}
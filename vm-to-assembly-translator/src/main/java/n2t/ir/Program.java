@@ -0,0 +1,107 @@
+package n2t.ir;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import n2t.CodeWriter;
+import n2t.commands.CommandType;
+
+/**
+ * Holds a whole VM program in memory as a list of functions, in the order
+ * their files and commands were read, so passes can look across commands
+ * before any assembly code is written.
+ */
+public class Program {
+  private final List<VmFunction> functions = new ArrayList<>();
+  private VmFunction current;
+
+  /**
+   * Adds the next command read from a file, starting a new function at each
+   * {@code function} command.
+   *
+   * @param fileName the base name of the file the command was read from
+   * @param command the parsed command, or {@code null} for an empty line
+   * @throws IllegalArgumentException if the command has invalid operands
+   */
+  public void add(String fileName, CommandType command) {
+    if (command == null) {
+      return;
+    }
+    Instruction instruction = Instruction.of(command);
+
+    if (instruction.opcode() == Opcode.FUNCTION) {
+      current = new VmFunction(fileName, instruction.symbol(), instruction.index());
+      functions.add(current);
+    } else {
+      if (current == null || !current.fileName().equals(fileName)) {
+        // Code outside any function, at the start of a file
+        current = new VmFunction(fileName, null, 0);
+        functions.add(current);
+      }
+      current.body().add(instruction);
+    }
+  }
+
+  /**
+   * Returns the functions of the program, which passes may change in place.
+   *
+   * <p>The functions of each file must stay next to each other, since generated
+   * labels are numbered within each file.
+   *
+   * @return the functions in order
+   */
+  public List<VmFunction> functions() {
+    return functions;
+  }
+
+  /**
+   * Returns the function with the given name.
+   *
+   * @param name the name of the function
+   * @return the function, or {@code null} if there is none
+   */
+  public VmFunction function(String name) {
+    for (VmFunction function : functions) {
+      if (name.equals(function.name())) {
+        return function;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns the number of instructions in the program, counting each
+   * {@code function} command.
+   *
+   * @return the number of instructions
+   */
+  public int size() {
+    int size = 0;
+    for (VmFunction function : functions) {
+      size += function.body().size() + (function.hasHeader() ? 1 : 0);
+    }
+    return size;
+  }
+
+  /**
+   * Writes every function of the program through the given {@code CodeWriter}.
+   *
+   * @param codeWriter the writer for the assembly code
+   * @throws IOException if the code cannot be written
+   */
+  public void writeTo(CodeWriter codeWriter) throws IOException {
+    String fileName = null;
+    for (VmFunction function : functions) {
+      if (!function.fileName().equals(fileName)) {
+        fileName = function.fileName();
+        codeWriter.setCurrentFileName(fileName);
+      }
+      if (function.hasHeader()) {
+        codeWriter.write(function.header().toCommand());
+      }
+      for (Instruction instruction : function.body()) {
+        codeWriter.write(instruction.toCommand());
+      }
+    }
+  }
+}
@@ -0,0 +1,80 @@
+package n2t.ir;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Represents a memory segment of the VM.
+ */
+public enum Segment {
+  CONSTANT("constant"),
+  LOCAL("local"),
+  ARGUMENT("argument"),
+  THIS("this"),
+  THAT("that"),
+  POINTER("pointer"),
+  TEMP("temp"),
+  STATIC("static");
+
+  private final String mnemonic;
+
+  Segment(String mnemonic) {
+    this.mnemonic = mnemonic;
+  }
+
+  /**
+   * Returns the name of the segment in VM code.
+   *
+   * @return the mnemonic
+   */
+  public String mnemonic() {
+    return mnemonic;
+  }
+
+  /**
+   * Returns the segment with the given name in VM code.
+   *
+   * @param mnemonic the name of the segment
+   * @return the segment
+   * @throws IllegalArgumentException if no segment has the name
+   */
+  public static Segment of(String mnemonic) {
+    Segment segment = BY_MNEMONIC.get(mnemonic);
+    if (segment == null) {
+      throw new IllegalArgumentException("Unknown segment: " + mnemonic);
+    }
+    return segment;
+  }
+
+  /**
+   * Returns the segment whose name in VM code is the given part of a line,
+   * without copying it out of the line.
+   *
+   * @param line the line holding the name
+   * @param from the index of the name's first character
+   * @param to the index just past the name's last character
+   * @return the segment
+   * @throws IllegalArgumentException if no segment has the name
+   */
+  public static Segment of(String line, int from, int to) {
+    int length = to - from;
+    for (Segment segment : VALUES) {
+      if (segment.mnemonic.length() == length && line.regionMatches(from, segment.mnemonic, 0, length)) {
+        return segment;
+      }
+    }
+    throw new IllegalArgumentException("Unknown segment: " + line.substring(from, to));
+  }
+
+  // Every segment, kept to avoid copying the array on each lookup
+  private static final Segment[] VALUES = values();
+
+  // Each mnemonic mapped to its segment
+  private static final Map<String, Segment> BY_MNEMONIC = new HashMap<>();
+
+  static {
+    for (Segment segment : values()) {
+      BY_MNEMONIC.put(segment.mnemonic, segment);
+    }
+  }
+}
@@ -0,0 +1,75 @@
+package n2t.ir;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Represents a VM function: its name, number of local variables, and the
+ * instructions of its body, in the file that declared it.
+ *
+ * <p>Code before the first function of a file is kept in a function without
+ * a name, which is written without a {@code function} command.
+ */
+public class VmFunction {
+  private final String fileName;
+  private final String name;
+  private int localCount;
+  private final List<Instruction> body;
+
+  /**
+   * Constructs an empty function.
+   *
+   * @param fileName the base name of the file that declares the function
+   * @param name the name of the function, or {@code null} for code outside any function
+   * @param localCount the number of local variables
+   */
+  public VmFunction(String fileName, String name, int localCount) {
+    this.fileName = fileName;
+    this.name = name;
+    this.localCount = localCount;
+    this.body = new ArrayList<>();
+  }
+
+  public String fileName() {
+    return fileName;
+  }
+
+  public String name() {
+    return name;
+  }
+
+  public int localCount() {
+    return localCount;
+  }
+
+  public void setLocalCount(int localCount) {
+    this.localCount = localCount;
+  }
+
+  /**
+   * Returns the instructions of the body, which passes may change in place.
+   *
+   * @return the body, not including the {@code function} instruction
+   */
+  public List<Instruction> body() {
+    return body;
+  }
+
+  /**
+   * Returns whether the function was declared by a {@code function} command.
+   *
+   * @return false for code outside any function
+   */
+  public boolean hasHeader() {
+    return name != null;
+  }
+
+  /**
+   * Returns the {@code function} instruction declaring the function.
+   *
+   * @return the instruction
+   */
+  public Instruction header() {
+    return new Instruction(Opcode.FUNCTION, null, name, localCount);
+  }
+}
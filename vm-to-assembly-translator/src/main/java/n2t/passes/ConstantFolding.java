@@ -0,0 +1,231 @@
+package n2t.passes;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import n2t.ir.Instruction;
+import n2t.ir.Opcode;
+import n2t.ir.Pass;
+import n2t.ir.Program;
+import n2t.ir.Segment;
+import n2t.ir.VmFunction;
+
+/**
+ * Folds arithmetic on constants at translate time, and removes operations
+ * that leave their operand unchanged.
+ *
+ * <p>A constant is {@code push constant c}, or {@code push constant c} followed
+ * by {@code not} for a negative value. Arithmetic and comparisons whose operands
+ * are all constants are replaced by their 16-bit result, an if-goto on a constant
+ * becomes a goto or nothing, and adding, subtracting or or-ing 0, and-ing -1,
+ * and double neg or not are removed. Labels are never matched across, since
+ * a label is not a constant.
+ *
+ * <p>The Hack code for gt and lt tests the sign of x - y computed in 16 bits, which
+ * gives the opposite answer when the subtraction overflows. Those comparisons are
+ * left unfolded, so folding never changes what a program computes.
+ */
+public class ConstantFolding implements Pass {
+  // Each function's name mapped to the number of commands it lost, for the report
+  private final Map<String, Integer> eliminated = new LinkedHashMap<>();
+
+  @Override
+  public String name() {
+    return "constant folding";
+  }
+
+  @Override
+  public void run(Program program) {
+    eliminated.clear();
+    for (VmFunction function : program.functions()) {
+      List<Instruction> body = function.body();
+      List<Instruction> folded = new ArrayList<>(body.size());
+      for (Instruction instruction : body) {
+        folded.add(instruction);
+        while (simplifyTail(folded)) {
+          // Keep simplifying, since each result may be an operand of the next
+        }
+      }
+      if (folded.size() < body.size()) {
+        String name = function.hasHeader() ? function.name() : function.fileName() + " (outside functions)";
+        eliminated.put(name, body.size() - folded.size());
+        body.clear();
+        body.addAll(folded);
+      }
+    }
+  }
+
+  @Override
+  public String report() {
+    StringBuilder report = new StringBuilder();
+    int total = 0;
+    for (Map.Entry<String, Integer> entry : eliminated.entrySet()) {
+      report.append(entry.getKey()).append(": ").append(count(entry.getValue(), "command"))
+          .append(" eliminated\n");
+      total += entry.getValue();
+    }
+    report.append(count(total, "command")).append(" eliminated in ")
+        .append(count(eliminated.size(), "function")).append('\n');
+    return report.toString();
+  }
+
+  // Returns a count followed by the noun, in the plural unless the count is 1
+  private static String count(int count, String noun) {
+    return count + " " + noun + (count == 1 ? "" : "s");
+  }
+
+  /**
+   * Simplifies the instructions at the end of the list, if they match a pattern.
+   *
+   * @param code the instructions so far
+   * @return true if the end of the list was changed
+   */
+  private static boolean simplifyTail(List<Instruction> code) {
+    int last = code.size() - 1;
+    if (last < 0) {
+      return false;
+    }
+    Instruction instruction = code.get(last);
+    Opcode opcode = instruction.opcode();
+
+    if (opcode == Opcode.IF_GOTO) {
+      int condition = constantLength(code, last);
+      if (condition == 0) {
+        return false;
+      }
+      int value = constantValue(code, last - 1);
+      truncate(code, last - condition);
+      if (value != 0) {
+        code.add(new Instruction(Opcode.GOTO, null, instruction.symbol(), 0));
+      }
+      return true;
+    }
+    if (!opcode.isArithmetic()) {
+      return false;
+    }
+
+    // y, or the single operand, ends just before the operation
+    int yLength = constantLength(code, last);
+    if (opcode.isUnary()) {
+      // A push directly followed by neg or not is already the shortest form of its value
+      if (yLength == 2) {
+        int y = constantValue(code, last - 1);
+        truncate(code, last - yLength);
+        pushConstant(code, opcode == Opcode.NEG ? -y : ~y);
+        return true;
+      }
+      if (last > 0 && code.get(last - 1).opcode() == opcode) {
+        // neg neg and not not leave the operand unchanged
+        truncate(code, last - 1);
+        return true;
+      }
+      return false;
+    }
+    if (yLength == 0) {
+      return false;
+    }
+    int y = constantValue(code, last - 1);
+    int xLength = constantLength(code, last - yLength);
+    if (xLength > 0) {
+      int x = constantValue(code, last - yLength - 1);
+      if ((opcode == Opcode.GT || opcode == Opcode.LT) && x - y != toShort(x - y)) {
+        return false;
+      }
+      truncate(code, last - yLength - xLength);
+      pushConstant(code, apply(opcode, x, y));
+      return true;
+    }
+
+    // Only y is known, so remove the operation if it leaves x unchanged
+    boolean identity = (y == 0 && (opcode == Opcode.ADD || opcode == Opcode.SUB || opcode == Opcode.OR))
+        || (y == -1 && opcode == Opcode.AND);
+    if (identity) {
+      truncate(code, last - yLength);
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Returns the number of instructions of the constant ending just before the given
+   * position, or 0 if those instructions are not a constant.
+   *
+   * @param code the instructions
+   * @param end the position just after the constant
+   * @return 1 for {@code push constant c}, 2 for {@code push constant c; not} or
+   *     {@code push constant c; neg}, otherwise 0
+   */
+  private static int constantLength(List<Instruction> code, int end) {
+    if (end < 1) {
+      return 0;
+    }
+    Instruction before = code.get(end - 1);
+    if (isPushConstant(before)) {
+      return 1;
+    }
+    if ((before.opcode() == Opcode.NOT || before.opcode() == Opcode.NEG)
+        && end >= 2 && isPushConstant(code.get(end - 2))) {
+      return 2;
+    }
+    return 0;
+  }
+
+  // Returns the value of the constant ending at the given position, known to be a constant
+  private static int constantValue(List<Instruction> code, int lastIndex) {
+    Instruction instruction = code.get(lastIndex);
+    if (instruction.opcode() == Opcode.NOT) {
+      return toShort(~code.get(lastIndex - 1).index());
+    }
+    if (instruction.opcode() == Opcode.NEG) {
+      return toShort(-code.get(lastIndex - 1).index());
+    }
+    return toShort(instruction.index());
+  }
+
+  private static boolean isPushConstant(Instruction instruction) {
+    return instruction.opcode() == Opcode.PUSH && instruction.segment() == Segment.CONSTANT;
+  }
+
+  // Appends the shortest push of a 16-bit value
+  private static void pushConstant(List<Instruction> code, int value) {
+    value = toShort(value);
+    if (value >= 0) {
+      code.add(Instruction.push(Segment.CONSTANT, value));
+    } else {
+      // ~value is between 0 and 32767 for every negative 16-bit value
+      code.add(Instruction.push(Segment.CONSTANT, ~value));
+      code.add(new Instruction(Opcode.NOT, null, null, 0));
+    }
+  }
+
+  // Computes a binary operation on 16-bit values, with -1 for true and 0 for false
+  private static int apply(Opcode opcode, int x, int y) {
+    switch (opcode) {
+      case ADD:
+        return x + y;
+      case SUB:
+        return x - y;
+      case AND:
+        return x & y;
+      case OR:
+        return x | y;
+      case EQ:
+        return x == y ? -1 : 0;
+      case GT:
+        return x > y ? -1 : 0;
+      case LT:
+        return x < y ? -1 : 0;
+      default:
+        throw new IllegalArgumentException("Not a binary operation: " + opcode.mnemonic());
+    }
+  }
+
+  private static int toShort(int value) {
+    return (short) value;
+  }
+
+  private static void truncate(List<Instruction> code, int size) {
+    code.subList(size, code.size()).clear();
+  }
+}
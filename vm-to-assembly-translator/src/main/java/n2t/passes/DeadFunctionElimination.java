@@ -0,0 +1,143 @@
+package n2t.passes;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import n2t.CodeWriter;
+import n2t.MemorySink;
+import n2t.ir.Instruction;
+import n2t.ir.Opcode;
+import n2t.ir.Pass;
+import n2t.ir.Program;
+import n2t.ir.VmFunction;
+
+/**
+ * Removes every function that cannot be reached from {@code Sys.init}, which
+ * the bootstrap code calls.
+ *
+ * <p>The call graph is built from the {@code call} commands of each reachable
+ * function. Code outside any function is always kept, and so is a function that
+ * the function before it can fall through into, for a body that does not end
+ * with a return or goto. Programs without {@code Sys.init} are left unchanged.
+ */
+public class DeadFunctionElimination implements Pass {
+  // The function called by the bootstrap code
+  private static final String ENTRY_POINT = "Sys.init";
+
+  private final Set<CodeWriter.Option> options;
+  private final List<String> removed = new ArrayList<>();
+  private int functionCount;
+  private int romWordsSaved;
+
+  /**
+   * Constructs the pass.
+   *
+   * @param options the options the program will be written with, used to count the ROM words saved
+   */
+  public DeadFunctionElimination(Set<CodeWriter.Option> options) {
+    this.options = options;
+  }
+
+  @Override
+  public String name() {
+    return "dead function elimination";
+  }
+
+  @Override
+  public void run(Program program) {
+    removed.clear();
+    romWordsSaved = 0;
+    List<VmFunction> functions = program.functions();
+    functionCount = functions.size();
+    if (program.function(ENTRY_POINT) == null) {
+      return;
+    }
+
+    Map<String, Integer> positions = new HashMap<>();
+    for (int i = 0; i < functions.size(); i++) {
+      if (functions.get(i).hasHeader()) {
+        positions.put(functions.get(i).name(), i);
+      }
+    }
+
+    // Walk the call graph from the entry point and any code outside functions
+    boolean[] reachable = new boolean[functions.size()];
+    Deque<Integer> worklist = new ArrayDeque<>();
+    worklist.add(positions.get(ENTRY_POINT));
+    for (int i = 0; i < functions.size(); i++) {
+      if (!functions.get(i).hasHeader()) {
+        worklist.add(i);
+      }
+    }
+    while (!worklist.isEmpty()) {
+      int position = worklist.poll();
+      if (reachable[position]) {
+        continue;
+      }
+      reachable[position] = true;
+      VmFunction function = functions.get(position);
+
+      for (Instruction instruction : function.body()) {
+        if (instruction.opcode() == Opcode.CALL && positions.containsKey(instruction.symbol())) {
+          worklist.add(positions.get(instruction.symbol()));
+        }
+      }
+      if (fallsThrough(function) && position + 1 < functions.size()) {
+        worklist.add(position + 1);
+      }
+    }
+
+    List<VmFunction> dead = new ArrayList<>();
+    List<VmFunction> live = new ArrayList<>();
+    for (int i = 0; i < functions.size(); i++) {
+      (reachable[i] ? live : dead).add(functions.get(i));
+    }
+    for (VmFunction function : dead) {
+      removed.add(function.name());
+    }
+    romWordsSaved = romWords(dead);
+    functions.clear();
+    functions.addAll(live);
+  }
+
+  @Override
+  public String report() {
+    StringBuilder report = new StringBuilder();
+    report.append("Removed ").append(removed.size()).append(" of ").append(functionCount)
+        .append(" functions, saving ").append(romWordsSaved).append(" ROM words\n");
+    for (String name : removed) {
+      report.append("  ").append(name).append('\n');
+    }
+    return report.toString();
+  }
+
+  // Returns whether control can run off the end of the function into the next one
+  private static boolean fallsThrough(VmFunction function) {
+    List<Instruction> body = function.body();
+    if (body.isEmpty()) {
+      return true;
+    }
+    Opcode last = body.get(body.size() - 1).opcode();
+    return last != Opcode.RETURN && last != Opcode.GOTO;
+  }
+
+  // Counts the ROM words the functions take, by writing them to a scratch CodeWriter
+  private int romWords(List<VmFunction> functions) {
+    Program program = new Program();
+    program.functions().addAll(functions);
+    try {
+      CodeWriter scratch = new CodeWriter(new MemorySink(), options, false);
+      program.writeTo(scratch);
+      scratch.close();
+      return scratch.statistics().instructions();
+    } catch (IOException e) {
+      // Writing to memory cannot fail
+      throw new IllegalStateException(e);
+    }
+  }
+}
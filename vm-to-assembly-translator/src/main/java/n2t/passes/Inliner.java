@@ -0,0 +1,374 @@
+package n2t.passes;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import n2t.ir.Instruction;
+import n2t.ir.Opcode;
+import n2t.ir.Pass;
+import n2t.ir.Program;
+import n2t.ir.Segment;
+import n2t.ir.VmFunction;
+
+/**
+ * Replaces calls to small leaf functions with a copy of their body, saving the
+ * frame set up by the call and torn down by the return.
+ *
+ * <p>A function can be inlined if its body makes no calls, has no labels or
+ * branches, is no longer than the size limit, and ends with its only return
+ * while just the return value is on its stack. Since such a function never
+ * calls anything, it cannot be recursive.
+ *
+ * <p>At each call site the arguments, local variables and temp variables of the
+ * function are moved to temp variables of the caller that are not read after
+ * the call, and THIS and THAT are saved and restored around the body if it sets
+ * them, as the return would. A call site is left alone if there are not enough
+ * such temp variables, if the function uses the statics of another file, or if
+ * a temp variable the function sets is read after the call. Temp variables are
+ * assumed not to carry values into a function or out of a return.
+ */
+public class Inliner implements Pass {
+  // The largest body inlined by default, in instructions not counting the return
+  public static final int DEFAULT_MAX_SIZE = 8;
+
+  // The number of temp variables
+  private static final int TEMP_COUNT = 8;
+
+  // Every temp variable, as a mask with one bit per index
+  private static final int ALL_TEMPS = (1 << TEMP_COUNT) - 1;
+
+  private int maxSize = DEFAULT_MAX_SIZE;
+  // Each inlined call site, described for the report
+  private final List<String> sites = new ArrayList<>();
+  private int skippedSites;
+
+  @Override
+  public String name() {
+    return "inlining";
+  }
+
+  /**
+   * Sets the largest body that is inlined.
+   *
+   * @param maxSize the number of instructions, not counting the return
+   * @throws IllegalArgumentException if the size is negative
+   */
+  public void setMaxSize(int maxSize) {
+    if (maxSize < 0) {
+      throw new IllegalArgumentException("Negative inlining size limit: " + maxSize);
+    }
+    this.maxSize = maxSize;
+  }
+
+  @Override
+  public void run(Program program) {
+    sites.clear();
+    skippedSites = 0;
+
+    Map<String, Candidate> candidates = new HashMap<>();
+    for (VmFunction function : program.functions()) {
+      Candidate candidate = Candidate.of(function, maxSize);
+      if (candidate != null) {
+        candidates.put(function.name(), candidate);
+      }
+    }
+    if (candidates.isEmpty()) {
+      return;
+    }
+
+    for (VmFunction caller : program.functions()) {
+      List<Instruction> body = caller.body();
+      int[] liveAfter = null;
+      List<Instruction> inlined = new ArrayList<>(body.size());
+      for (int i = 0; i < body.size(); i++) {
+        Instruction instruction = body.get(i);
+        Candidate candidate = instruction.opcode() == Opcode.CALL ? candidates.get(instruction.symbol()) : null;
+        if (candidate == null) {
+          inlined.add(instruction);
+          continue;
+        }
+        if (liveAfter == null) {
+          liveAfter = liveTempsAfter(body);
+        }
+        if (!candidate.expand(caller, instruction.index(), liveAfter[i], inlined)) {
+          inlined.add(instruction);
+          skippedSites++;
+          continue;
+        }
+        String name = caller.hasHeader() ? caller.name() : caller.fileName() + " (outside functions)";
+        sites.add(name + ": " + candidate.function.name() + " inlined");
+      }
+      if (liveAfter != null) {
+        body.clear();
+        body.addAll(inlined);
+      }
+    }
+  }
+
+  @Override
+  public String report() {
+    StringBuilder report = new StringBuilder();
+    for (String site : sites) {
+      report.append(site).append('\n');
+    }
+    report.append(sites.size()).append(sites.size() == 1 ? " call site" : " call sites")
+        .append(" inlined, ").append(skippedSites).append(" skipped\n");
+    return report.toString();
+  }
+
+  /**
+   * Finds the temp variables that may be read after each instruction before
+   * being set again, by iterating backwards over the branches of the body.
+   *
+   * @param body the body of a function
+   * @return for each instruction, a mask with one bit per temp variable
+   */
+  private static int[] liveTempsAfter(List<Instruction> body) {
+    Map<String, Integer> labels = new HashMap<>();
+    for (int i = 0; i < body.size(); i++) {
+      if (body.get(i).opcode() == Opcode.LABEL) {
+        labels.put(body.get(i).symbol(), i);
+      }
+    }
+
+    // Running off the end of the body continues into whatever follows it
+    int[] liveBefore = new int[body.size() + 1];
+    liveBefore[body.size()] = ALL_TEMPS;
+    int[] liveAfter = new int[body.size()];
+    boolean changed = true;
+    while (changed) {
+      changed = false;
+      for (int i = body.size() - 1; i >= 0; i--) {
+        Instruction instruction = body.get(i);
+        int live;
+        switch (instruction.opcode()) {
+          case RETURN:
+            live = 0;
+            break;
+          case GOTO:
+            live = liveAtLabel(labels, instruction.symbol(), liveBefore);
+            break;
+          case IF_GOTO:
+            live = liveBefore[i + 1] | liveAtLabel(labels, instruction.symbol(), liveBefore);
+            break;
+          default:
+            live = liveBefore[i + 1];
+        }
+        liveAfter[i] = live;
+
+        if (instruction.segment() == Segment.TEMP && instruction.index() < TEMP_COUNT) {
+          int bit = 1 << instruction.index();
+          live = instruction.opcode() == Opcode.PUSH ? live | bit : live & ~bit;
+        }
+        if (live != liveBefore[i]) {
+          liveBefore[i] = live;
+          changed = true;
+        }
+      }
+    }
+    return liveAfter;
+  }
+
+  // Returns the temp variables live at a label, or all of them for a label outside the body
+  private static int liveAtLabel(Map<String, Integer> labels, String label, int[] liveBefore) {
+    Integer position = labels.get(label);
+    return position == null ? ALL_TEMPS : liveBefore[position];
+  }
+
+  /**
+   * A function that can be inlined, with what its body needs from each call site.
+   */
+  private static final class Candidate {
+    private final VmFunction function;
+    // The body without its return
+    private final List<Instruction> body;
+    // One more than the highest argument index used
+    private int argumentCount;
+    // The local variables read before being set, which must start at 0
+    private final boolean[] zeroedLocals;
+    // The temp variables the body uses, all of which it sets before reading
+    private int tempsUsed;
+    private boolean setsThis;
+    private boolean setsThat;
+    private boolean usesStatics;
+
+    private Candidate(VmFunction function) {
+      this.function = function;
+      this.body = new ArrayList<>(function.body().subList(0, function.body().size() - 1));
+      this.zeroedLocals = new boolean[function.localCount()];
+    }
+
+    /**
+     * Checks whether a function can be inlined.
+     *
+     * @param function the function
+     * @param maxSize the largest body inlined, not counting the return
+     * @return the candidate, or {@code null} if the function cannot be inlined
+     */
+    static Candidate of(VmFunction function, int maxSize) {
+      List<Instruction> body = function.body();
+      if (!function.hasHeader() || body.isEmpty() || body.size() - 1 > maxSize
+          || body.get(body.size() - 1).opcode() != Opcode.RETURN) {
+        return null;
+      }
+
+      Candidate candidate = new Candidate(function);
+      boolean[] setLocals = new boolean[function.localCount()];
+      int depth = 0;
+      for (Instruction instruction : candidate.body) {
+        Opcode opcode = instruction.opcode();
+        if (opcode == Opcode.PUSH || opcode == Opcode.POP) {
+          boolean push = opcode == Opcode.PUSH;
+          if (!push && depth < 1 || !candidate.addAccess(instruction, push, setLocals)) {
+            return null;
+          }
+          depth += push ? 1 : -1;
+        } else if (opcode.isUnary()) {
+          if (depth < 1) {
+            return null;
+          }
+        } else if (opcode.isArithmetic()) {
+          if (depth < 2) {
+            return null;
+          }
+          depth--;
+        } else {
+          // Labels, branches, calls and returns
+          return null;
+        }
+      }
+      return depth == 1 ? candidate : null;
+    }
+
+    // Records a push or pop of the body, returning false if it prevents inlining
+    private boolean addAccess(Instruction instruction, boolean push, boolean[] setLocals) {
+      int index = instruction.index();
+      switch (instruction.segment()) {
+        case ARGUMENT:
+          argumentCount = Math.max(argumentCount, index + 1);
+          return true;
+        case LOCAL:
+          if (index >= setLocals.length) {
+            return false;
+          }
+          if (push && !setLocals[index]) {
+            zeroedLocals[index] = true;
+          }
+          setLocals[index] |= !push;
+          return true;
+        case TEMP:
+          if (index >= TEMP_COUNT || push && (tempsUsed & 1 << index) == 0) {
+            return false;
+          }
+          tempsUsed |= 1 << index;
+          return true;
+        case POINTER:
+          setsThis |= !push && index == 0;
+          setsThat |= !push && index == 1;
+          return index <= 1;
+        case STATIC:
+          usesStatics = true;
+          return true;
+        case CONSTANT:
+          return push;
+        default:
+          return true;
+      }
+    }
+
+    /**
+     * Appends the body in place of a call, if the call site allows it.
+     *
+     * @param caller the function making the call
+     * @param argumentsPassed the number of arguments the call passes
+     * @param liveAfter the temp variables of the caller read after the call
+     * @param out the instructions to append to
+     * @return false if the call must be kept
+     */
+    boolean expand(VmFunction caller, int argumentsPassed, int liveAfter, List<Instruction> out) {
+      if (argumentsPassed < argumentCount || (tempsUsed & liveAfter) != 0
+          || usesStatics && !caller.fileName().equals(function.fileName())) {
+        return false;
+      }
+
+      // Give every argument, local and temp variable of the body its own free temp variable
+      int[] free = new int[TEMP_COUNT];
+      int freeCount = 0;
+      for (int i = 0; i < TEMP_COUNT; i++) {
+        if ((liveAfter & 1 << i) == 0) {
+          free[freeCount++] = i;
+        }
+      }
+      int needed = argumentsPassed + zeroedLocals.length + Integer.bitCount(tempsUsed)
+          + (setsThis ? 1 : 0) + (setsThat ? 1 : 0);
+      if (needed > freeCount) {
+        return false;
+      }
+      int next = 0;
+      int[] arguments = new int[argumentsPassed];
+      for (int i = 0; i < argumentsPassed; i++) {
+        arguments[i] = free[next++];
+      }
+      int[] locals = new int[zeroedLocals.length];
+      for (int i = 0; i < locals.length; i++) {
+        locals[i] = free[next++];
+      }
+      int[] temps = new int[TEMP_COUNT];
+      for (int i = 0; i < TEMP_COUNT; i++) {
+        if ((tempsUsed & 1 << i) != 0) {
+          temps[i] = free[next++];
+        }
+      }
+      int savedThis = setsThis ? free[next++] : -1;
+      int savedThat = setsThat ? free[next++] : -1;
+
+      // Move the arguments off the stack, last first, and set up the frame
+      for (int i = argumentsPassed - 1; i >= 0; i--) {
+        out.add(Instruction.pop(Segment.TEMP, arguments[i]));
+      }
+      for (int i = 0; i < locals.length; i++) {
+        if (zeroedLocals[i]) {
+          out.add(Instruction.push(Segment.CONSTANT, 0));
+          out.add(Instruction.pop(Segment.TEMP, locals[i]));
+        }
+      }
+      if (setsThis) {
+        out.add(Instruction.push(Segment.POINTER, 0));
+        out.add(Instruction.pop(Segment.TEMP, savedThis));
+      }
+      if (setsThat) {
+        out.add(Instruction.push(Segment.POINTER, 1));
+        out.add(Instruction.pop(Segment.TEMP, savedThat));
+      }
+
+      for (Instruction instruction : body) {
+        Segment segment = instruction.segment();
+        int slot;
+        if (segment == Segment.ARGUMENT) {
+          slot = arguments[instruction.index()];
+        } else if (segment == Segment.LOCAL) {
+          slot = locals[instruction.index()];
+        } else if (segment == Segment.TEMP) {
+          slot = temps[instruction.index()];
+        } else {
+          out.add(instruction);
+          continue;
+        }
+        out.add(instruction.opcode() == Opcode.PUSH
+            ? Instruction.push(Segment.TEMP, slot) : Instruction.pop(Segment.TEMP, slot));
+      }
+
+      // Restore the caller's THIS and THAT beneath the return value, as the return would
+      if (setsThat) {
+        out.add(Instruction.push(Segment.TEMP, savedThat));
+        out.add(Instruction.pop(Segment.POINTER, 1));
+      }
+      if (setsThis) {
+        out.add(Instruction.push(Segment.TEMP, savedThis));
+        out.add(Instruction.pop(Segment.POINTER, 0));
+      }
+      return true;
+    }
+  }
+}
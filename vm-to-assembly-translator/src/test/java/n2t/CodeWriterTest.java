@@ -0,0 +1,173 @@
+package n2t;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.junit.Test;
+
+/**
+ * Checks that every change to the assembly code a {@code CodeWriter} can make
+ * leaves what the program computes unchanged.
+ */
+public class CodeWriterTest {
+  // Where the program stores its results, through THAT
+  private static final int RESULTS = 8000;
+
+  // Pairs of operands compared, none of which overflow x - y
+  private static final int[][] COMPARED = {{3, 5}, {5, 3}, {5, 5}, {-2, 3}, {3, -2}, {-4, -4}};
+
+  private static final String[] COMPARISONS = {"eq", "gt", "lt"};
+
+  // The options tail calls are checked with, each changing the code around them
+  private static final List<Set<CodeWriter.Option>> TAIL_CALL_OPTIONS = List.of(
+      EnumSet.of(CodeWriter.Option.TAIL_CALLS),
+      EnumSet.of(CodeWriter.Option.TAIL_CALLS, CodeWriter.Option.STACK_CACHE),
+      EnumSet.of(CodeWriter.Option.TAIL_CALLS, CodeWriter.Option.SHARED_RUNTIME));
+
+  @Test
+  public void everyCombinationOfOptionsComputesWhatTheDefaultCodeComputes() throws Exception {
+    StringBuilder sys = new StringBuilder("function Sys.init 10\n");
+    sys.append("push constant ").append(RESULTS).append("\npop pointer 1\n");
+    int count = 0;
+
+    // Segment indices above the ones reached by stepping from the base pointer
+    sys.append("push constant 41\npop local 9\npush local 9\npop that ").append(count++).append('\n');
+    sys.append("push constant 9000\npop pointer 0\npush constant 42\npop this 8\n");
+    sys.append("push this 8\npop that ").append(count++).append('\n');
+    sys.append("push constant 43\npop temp 7\npush temp 7\npop that ").append(count++).append('\n');
+
+    // Returns with the return value computed last, so the stack cache holds it in D
+    sys.append("push constant 20\ncall Main.double 1\npop that ").append(count++).append('\n');
+    sys.append("call Main.seven 0\npop that ").append(count++).append('\n');
+    for (int i = 1; i <= 9; i++) {
+      sys.append("push constant ").append(i * 3).append('\n');
+    }
+    sys.append("call Main.ninth 9\npop that ").append(count++).append('\n');
+    sys.append("push constant 6\ncall Main.outer 1\npop that ").append(count++).append('\n');
+
+    // Comparisons stored, and tested by if-goto with and without not
+    for (int[] pair : COMPARED) {
+      for (String comparison : COMPARISONS) {
+        String operands = "push constant " + Math.abs(pair[0]) + (pair[0] < 0 ? "\nneg" : "")
+            + "\npush constant " + Math.abs(pair[1]) + (pair[1] < 0 ? "\nneg\n" : "\n");
+        sys.append(operands).append(comparison).append("\npop that ").append(count++).append('\n');
+        for (String negation : new String[] {"", "not\n"}) {
+          String taken = "TAKEN" + count;
+          String done = "DONE" + count;
+          sys.append(operands).append(comparison).append('\n').append(negation)
+              .append("if-goto ").append(taken).append('\n')
+              .append("push constant 1\npop that ").append(count).append("\ngoto ").append(done).append('\n')
+              .append("label ").append(taken).append('\n')
+              .append("push constant 2\npop that ").append(count).append('\n')
+              .append("label ").append(done).append('\n');
+          count++;
+        }
+      }
+    }
+
+    // The caller's locals survive every call
+    sys.append("push local 9\npop that ").append(count++).append('\n');
+    sys.append("label END\ngoto END\n");
+
+    Map<String, String> files = Map.of("Sys", sys.toString(), "Main", "function Main.double 0\n"
+        + "push argument 0\npush argument 0\nadd\nreturn\n"
+        + "function Main.seven 0\npush constant 7\nreturn\n"
+        + "function Main.ninth 0\npush argument 8\npush argument 7\nsub\nreturn\n"
+        + "function Main.outer 0\npush argument 0\ncall Main.double 1\nreturn\n");
+
+    short[] expected = VmRunner.run(VmRunner.program(files));
+    assertEquals(40, expected[RESULTS + 3]);
+    assertEquals(7, expected[RESULTS + 4]);
+    assertEquals(3, expected[RESULTS + 5]);
+    assertEquals(12, expected[RESULTS + 6]);
+
+    CodeWriter.Option[] options = CodeWriter.Option.values();
+    for (int mask = 1; mask < 1 << options.length; mask++) {
+      Set<CodeWriter.Option> chosen = EnumSet.noneOf(CodeWriter.Option.class);
+      for (int i = 0; i < options.length; i++) {
+        if ((mask & 1 << i) != 0) {
+          chosen.add(options[i]);
+        }
+      }
+      short[] ram = VmRunner.run(VmRunner.program(files), chosen);
+      for (int i = RESULTS; i < RESULTS + count; i++) {
+        assertEquals(chosen + " result " + (i - RESULTS), expected[i], ram[i]);
+      }
+    }
+  }
+
+  @Test
+  public void tailCallsWorkWhetherOrNotTheArgumentsFitBelowTheSavedFrame() throws Exception {
+    Map<String, String> files = Map.of("Sys", "function Sys.init 1\n"
+        + "push constant " + RESULTS + "\npop pointer 1\n"
+        + "push constant 55\npop local 0\npush constant 3000\npop pointer 0\n"
+        + "push constant 1\npush constant 2\npush constant 30\ncall Main.fewer 3\npop that 0\n"
+        + "push constant 1\ncall Main.more 1\npop that 1\n"
+        + "push pointer 0\npop that 2\npush local 0\npop that 3\npush pointer 1\npop that 4\n"
+        + "label END\ngoto END\n",
+        "Main", ""
+        // Two arguments fit where the caller's three were, below its saved frame
+        + "function Main.fewer 1\n"
+        + "push argument 0\npush argument 1\nadd\npop local 0\n"
+        + "push local 0\npush argument 2\ncall Main.two 2\nreturn\n"
+        + "function Main.two 0\n"
+        + "push constant 4000\npop pointer 0\npush constant 5000\npop pointer 1\n"
+        + "push argument 0\npush argument 1\nsub\nreturn\n"
+        // Four arguments do not fit where the caller's one was, so the saved frame is moved
+        + "function Main.more 2\n"
+        + "push argument 0\npop local 1\n"
+        + "push local 1\npush constant 10\npush constant 100\npush constant 1000\n"
+        + "call Main.four 4\nreturn\n"
+        + "function Main.four 1\n"
+        + "push constant 4000\npop pointer 0\npush local 0\npush argument 3\nadd\npop local 0\n"
+        + "push local 0\npush argument 2\nsub\npush argument 1\nsub\npush argument 0\nsub\nreturn\n");
+
+    short[] expected = VmRunner.run(VmRunner.program(files));
+    assertEquals(3 - 30, expected[RESULTS]);
+    assertEquals(1000 - 100 - 10 - 1, expected[RESULTS + 1]);
+    assertEquals(3000, expected[RESULTS + 2]);
+    assertEquals(55, expected[RESULTS + 3]);
+    assertEquals(RESULTS, expected[RESULTS + 4]);
+    for (Set<CodeWriter.Option> options : TAIL_CALL_OPTIONS) {
+      short[] ram = VmRunner.run(VmRunner.program(files), options);
+      for (int i = RESULTS; i < RESULTS + 5; i++) {
+        assertEquals(options + " result " + (i - RESULTS), expected[i], ram[i]);
+      }
+      // Sys.init's frame, its local and nothing else, is all that is left on the stack
+      assertEquals(expected[0], ram[0]);
+    }
+  }
+
+  @Test
+  public void deepTailRecursionKeepsTheStackBounded() throws Exception {
+    // Main.odd takes one argument and Main.even two, so every other tail call moves the frame
+    Map<String, String> files = Map.of("Sys", "function Sys.init 0\n"
+        + "push constant " + RESULTS + "\npop pointer 1\n"
+        + "push constant 2001\ncall Main.odd 1\npop that 0\n"
+        + "label END\ngoto END\n",
+        "Main", "function Main.odd 0\n"
+        + "push argument 0\npush constant 1\nsub\npush constant 7\ncall Main.even 2\nreturn\n"
+        + "function Main.even 0\n"
+        + "push argument 0\npush constant 0\neq\nif-goto DONE\n"
+        + "push argument 0\npush constant 1\nsub\ncall Main.odd 1\nreturn\n"
+        + "label DONE\npush argument 1\nreturn\n");
+
+    for (Set<CodeWriter.Option> options : TAIL_CALL_OPTIONS) {
+      short[] ram = VmRunner.run(VmRunner.program(files), options);
+      assertEquals(options.toString(), 7, ram[RESULTS]);
+    }
+
+    // Without tail calls, the same chain of calls overflows the stack
+    try {
+      VmRunner.run(VmRunner.program(files));
+    } catch (IllegalStateException e) {
+      assertTrue(e.getMessage(), e.getMessage().startsWith("Stack overflow"));
+      return;
+    }
+    throw new AssertionError("The chain of calls fits on the stack without tail calls");
+  }
+}
@@ -0,0 +1,144 @@
+package n2t;
+
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+import n2t.assembler.Assembler;
+import n2t.ir.Pass;
+import n2t.ir.Program;
+
+/**
+ * Translates VM code, assembles it and runs it on a small Hack CPU emulator, so
+ * tests can check what a program computes rather than the code written for it.
+ */
+public final class VmRunner {
+  // The number of words of RAM
+  private static final int RAM_WORDS = 1 << 15;
+
+  // The last address of the stack, above which the heap starts
+  private static final int STACK_END = 2047;
+
+  // Programs are expected to halt long before this many instructions
+  private static final int MAX_STEPS = 1_000_000;
+
+  private VmRunner() {}
+
+  /**
+   * Reads VM code into a {@code Program} and runs the given passes over it.
+   *
+   * @param files each file's base name mapped to its VM code
+   * @param passes the passes to run, in order
+   * @return the program after the passes
+   */
+  public static Program program(Map<String, String> files, Pass... passes) {
+    Program program = new Program();
+    Parser parser = new Parser();
+    for (Map.Entry<String, String> file : files.entrySet()) {
+      for (String line : file.getValue().split("\n")) {
+        program.add(file.getKey(), parser.parse(line));
+      }
+    }
+    for (Pass pass : passes) {
+      pass.run(program);
+    }
+    return program;
+  }
+
+  /**
+   * Translates and assembles a program with the bootstrap code, then runs it
+   * until it reaches a goto to its own label.
+   *
+   * @param program the program, which must have a Sys.init
+   * @return the RAM once the program halts
+   * @throws IllegalStateException if the program does not halt, its stack overflows, or it
+   *     runs past its last instruction
+   */
+  public static short[] run(Program program) throws IOException {
+    return run(program, EnumSet.noneOf(CodeWriter.Option.class));
+  }
+
+  /**
+   * Translates a program with the given changes to the assembly code, assembles
+   * it with the bootstrap code, then runs it until it reaches a goto to its own label.
+   *
+   * @param program the program, which must have a Sys.init
+   * @param options the changes to the assembly code written
+   * @return the RAM once the program halts
+   * @throws IllegalStateException if the program does not halt, its stack overflows, or it
+   *     runs past its last instruction
+   */
+  public static short[] run(Program program, Set<CodeWriter.Option> options) throws IOException {
+    MemorySink sink = new MemorySink();
+    CodeWriter codeWriter = new CodeWriter(sink, options, true);
+    program.writeTo(codeWriter);
+    codeWriter.close();
+    return execute(new Assembler().assemble(sink.contents()));
+  }
+
+  // Runs the instructions from address 0, returning the RAM once a jump lands on itself
+  private static short[] execute(int[] rom) {
+    short[] ram = new short[RAM_WORDS];
+    short a = 0;
+    short d = 0;
+    int pc = 0;
+    for (int step = 0; step < MAX_STEPS; step++) {
+      if (pc >= rom.length) {
+        throw new IllegalStateException("Jumped past the end of the program to " + pc);
+      }
+      int instruction = rom[pc];
+      if ((instruction & 0x8000) == 0) {
+        a = (short) instruction;
+        pc++;
+        continue;
+      }
+
+      short x = d;
+      short y = (instruction & 0x1000) != 0 ? ram[a & 0x7FFF] : a;
+      short out = alu(instruction >> 6 & 0x3F, x, y);
+      boolean jump = (instruction & 0b100) != 0 && out < 0
+          || (instruction & 0b010) != 0 && out == 0
+          || (instruction & 0b001) != 0 && out > 0;
+      int target = a & 0x7FFF;
+      if ((instruction & 0b001000) != 0) {
+        ram[a & 0x7FFF] = out;
+        if ((a & 0x7FFF) == 0 && out > STACK_END) {
+          throw new IllegalStateException("Stack overflow at instruction " + pc);
+        }
+      }
+      if ((instruction & 0b010000) != 0) {
+        d = out;
+      }
+      if ((instruction & 0b100000) != 0) {
+        a = out;
+      }
+      if (!jump) {
+        pc++;
+      } else if (target == pc - 1 && rom[target] == target) {
+        // @LOOP followed by 0;JMP at LOOP, the end of every test program
+        return ram;
+      } else {
+        pc = target;
+      }
+    }
+    throw new IllegalStateException("Program did not halt within " + MAX_STEPS + " steps");
+  }
+
+  // Computes the Hack ALU output for the zx, nx, zy, ny, f and no control bits
+  private static short alu(int control, short x, short y) {
+    if ((control & 0b100000) != 0) {
+      x = 0;
+    }
+    if ((control & 0b010000) != 0) {
+      x = (short) ~x;
+    }
+    if ((control & 0b001000) != 0) {
+      y = 0;
+    }
+    if ((control & 0b000100) != 0) {
+      y = (short) ~y;
+    }
+    short out = (control & 0b000010) != 0 ? (short) (x + y) : (short) (x & y);
+    return (control & 0b000001) != 0 ? (short) ~out : out;
+  }
+}
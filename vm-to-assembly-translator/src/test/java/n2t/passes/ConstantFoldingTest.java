@@ -0,0 +1,81 @@
+package n2t.passes;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import n2t.VmRunner;
+import n2t.ir.Instruction;
+import n2t.ir.Opcode;
+import n2t.ir.Program;
+import org.junit.Test;
+
+/**
+ * Checks that folded arithmetic computes what the Hack code it replaces computes.
+ */
+public class ConstantFoldingTest {
+  // Where the result of each operation is stored
+  private static final int RESULTS = 8000;
+
+  // Values at and around the ends of the 16-bit range, where x - y can overflow
+  private static final int[] VALUES = {32767, 32766, 1, 0, -1, -32767, -32768};
+
+  private static final String[] OPERATIONS = {"add", "sub", "and", "or", "eq", "gt", "lt"};
+
+  @Test
+  public void foldedOperationsMatchTheHackCodeAtTheBoundaries() throws Exception {
+    StringBuilder code = new StringBuilder("function Sys.init 0\n");
+    code.append("push constant ").append(RESULTS).append("\npop pointer 1\n");
+    int count = 0;
+    for (int x : VALUES) {
+      for (int y : VALUES) {
+        for (String operation : OPERATIONS) {
+          code.append(pushConstant(x)).append(pushConstant(y)).append(operation).append('\n');
+          code.append("pop that ").append(count++).append('\n');
+        }
+      }
+    }
+    code.append("label END\ngoto END\n");
+    Map<String, String> files = Map.of("Sys", code.toString());
+
+    short[] expected = VmRunner.run(VmRunner.program(files));
+    short[] folded = VmRunner.run(VmRunner.program(files, new ConstantFolding()));
+    for (int i = 0; i < count; i++) {
+      int x = VALUES[i / OPERATIONS.length / VALUES.length];
+      int y = VALUES[i / OPERATIONS.length % VALUES.length];
+      String operation = OPERATIONS[i % OPERATIONS.length];
+      assertEquals(x + " " + y + " " + operation, expected[RESULTS + i], folded[RESULTS + i]);
+    }
+  }
+
+  @Test
+  public void comparisonsWithoutOverflowAreFolded() {
+    ConstantFolding folding = new ConstantFolding();
+    Program program = VmRunner.program(Map.of("Sys", "function Sys.init 0\n"
+        + "push constant 32767\npush constant 1\nneg\nlt\n"
+        + "push constant 5\npush constant 3\ngt\n"
+        + "label END\ngoto END\n"), folding);
+    // 32767 - (-1) overflows, so only 5 > 3 is folded, to the two commands pushing true
+    assertEquals("Sys.init: 1 command eliminated\n1 command eliminated in 1 function\n", folding.report());
+    List<Opcode> opcodes = new ArrayList<>();
+    for (Instruction instruction : program.function("Sys.init").body()) {
+      opcodes.add(instruction.opcode());
+    }
+    assertTrue(opcodes.contains(Opcode.LT));
+    assertFalse(opcodes.contains(Opcode.GT));
+  }
+
+  // Returns the shortest VM code pushing a 16-bit value
+  private static String pushConstant(int value) {
+    if (value >= 0) {
+      return "push constant " + value + "\n";
+    }
+    if (value == -32768) {
+      return "push constant 32767\nnot\n";
+    }
+    return "push constant " + -value + "\nneg\n";
+  }
+}
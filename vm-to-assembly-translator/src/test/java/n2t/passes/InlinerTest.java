@@ -0,0 +1,121 @@
+package n2t.passes;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Map;
+import n2t.VmRunner;
+import org.junit.Test;
+
+/**
+ * Checks that inlined call sites compute what the calls they replace compute,
+ * and that the call sites the inliner must leave alone are left alone.
+ */
+public class InlinerTest {
+  // Where each program stores its results, through THAT
+  private static final int RESULTS = 8000;
+
+  // Points THAT at the results
+  private static final String POINT_AT_RESULTS = "push constant " + RESULTS + "\npop pointer 1\n";
+
+  // Sets every temp variable, so a value left over in one cannot pass for a fresh local
+  private static final String DIRTY_TEMPS = "push constant 77\npop temp 0\npush constant 77\npop temp 1\n"
+      + "push constant 77\npop temp 2\npush constant 77\npop temp 3\n"
+      + "push constant 77\npop temp 4\npush constant 77\npop temp 5\n"
+      + "push constant 77\npop temp 6\npush constant 77\npop temp 7\n";
+
+  private static final String HALT = "label END\ngoto END\n";
+
+  @Test
+  public void thisAndThatAreRestoredAfterACalleeSetsThem() throws Exception {
+    Map<String, String> files = Map.of(
+        "Main", "function Main.sum 0\n"
+            + "push argument 0\npop pointer 0\npush argument 1\npop pointer 1\n"
+            + "push this 0\npush that 0\nadd\nreturn\n",
+        "Sys", "function Sys.init 0\n"
+            + "push constant 5000\npop pointer 0\npush constant 7\npop this 0\n"
+            + "push constant 6000\npop pointer 1\npush constant 9\npop that 0\n"
+            + "push constant 3000\npop pointer 0\npush constant 4000\npop pointer 1\n"
+            + "push constant 5000\npush constant 6000\ncall Main.sum 2\n"
+            + "pop temp 0\npush pointer 0\npop temp 1\npush pointer 1\npop temp 2\n"
+            + POINT_AT_RESULTS
+            + "push temp 0\npop that 0\npush temp 1\npop that 1\npush temp 2\npop that 2\n"
+            + HALT);
+
+    Inliner inliner = new Inliner();
+    short[] ram = runWithAndWithout(files, inliner, 3);
+    assertEquals("Sys.init: Main.sum inlined\n1 call site inlined, 0 skipped\n", inliner.report());
+    assertEquals(16, ram[RESULTS]);
+    assertEquals(3000, ram[RESULTS + 1]);
+    assertEquals(4000, ram[RESULTS + 2]);
+  }
+
+  @Test
+  public void callSitesReadingATempTheCalleeSetsAreSkipped() throws Exception {
+    Map<String, String> files = Map.of(
+        "Main", "function Main.twice 0\n"
+            + "push argument 0\npop temp 0\npush temp 0\npush temp 0\nadd\nreturn\n",
+        "Sys", "function Sys.init 0\n"
+            + POINT_AT_RESULTS
+            + "push constant 5\npop temp 0\n"
+            + "push constant 21\ncall Main.twice 1\npop that 0\npush temp 0\npop that 1\n"
+            + "push constant 4\ncall Main.twice 1\npop that 2\n"
+            + HALT);
+
+    Inliner inliner = new Inliner();
+    short[] ram = runWithAndWithout(files, inliner, 3);
+    // Only the second call, after which temp 0 is never read, is inlined
+    assertEquals("Sys.init: Main.twice inlined\n1 call site inlined, 1 skipped\n", inliner.report());
+    assertEquals(42, ram[RESULTS]);
+    assertEquals(21, ram[RESULTS + 1]);
+    assertEquals(8, ram[RESULTS + 2]);
+  }
+
+  @Test
+  public void calleesUsingStaticsOfAnotherFileAreNotInlined() throws Exception {
+    Map<String, String> files = Map.of(
+        "Other", "function Other.set 0\npush argument 0\npop static 0\npush constant 0\nreturn\n"
+            + "function Other.get 0\npush static 0\npush argument 0\nadd\nreturn\n",
+        "Sys", "function Sys.init 0\n"
+            + POINT_AT_RESULTS
+            + "push constant 99\npop static 0\n"
+            + "push constant 40\ncall Other.set 1\npop temp 0\n"
+            + "push constant 2\ncall Other.get 1\npop that 0\npush static 0\npop that 1\n"
+            + HALT);
+
+    Inliner inliner = new Inliner();
+    short[] ram = runWithAndWithout(files, inliner, 2);
+    assertEquals("0 call sites inlined, 2 skipped\n", inliner.report());
+    assertEquals(42, ram[RESULTS]);
+    assertEquals(99, ram[RESULTS + 1]);
+  }
+
+  @Test
+  public void localsReadBeforeBeingSetStartAtZero() throws Exception {
+    Map<String, String> files = Map.of(
+        "Main", "function Main.count 1\n"
+            + "push local 0\npush argument 0\nadd\npop local 0\npush local 0\nreturn\n",
+        "Sys", "function Sys.init 0\n"
+            + POINT_AT_RESULTS
+            + DIRTY_TEMPS + "push constant 5\ncall Main.count 1\npop that 0\n"
+            + DIRTY_TEMPS + "push constant 6\ncall Main.count 1\npop that 1\n"
+            + HALT);
+
+    Inliner inliner = new Inliner();
+    short[] ram = runWithAndWithout(files, inliner, 2);
+    assertEquals("Sys.init: Main.count inlined\nSys.init: Main.count inlined\n"
+        + "2 call sites inlined, 0 skipped\n", inliner.report());
+    assertEquals(5, ram[RESULTS]);
+    assertEquals(6, ram[RESULTS + 1]);
+  }
+
+  // Runs the program without and with inlining, checks the results agree, and returns the RAM
+  private static short[] runWithAndWithout(Map<String, String> files, Inliner inliner, int results)
+      throws Exception {
+    short[] expected = VmRunner.run(VmRunner.program(files));
+    short[] inlined = VmRunner.run(VmRunner.program(files, inliner));
+    for (int i = RESULTS; i < RESULTS + results; i++) {
+      assertEquals("Result " + (i - RESULTS), expected[i], inlined[i]);
+    }
+    return inlined;
+  }
+}